@@ -0,0 +1,139 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.concurrency;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Holds {@code inFlight} requests blocked at once, as sends waiting on a commit, on a platform
+ * thread each (thread-per-request with a pool as large as in-flight) or on a virtual thread each.
+ * It reports time to get all of them in flight and memory per pending request. Where a platform
+ * thread can't be made any more, a run fails and that is a limit of in-flight sends.
+ *
+ * <p>Virtual mode needs Java 21 and fails on an older one. Run only platform mode there with
+ * {@code -p mode=platform}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class InFlightBenchmark {
+
+  @Param({"platform", "virtual"})
+  protected String mode;
+
+  @Param({"1000", "10000", "50000"})
+  protected int inFlight;
+
+  protected ExecutorService executor;
+
+  protected long heapBefore;
+
+  protected long rssBefore;
+
+  /**
+   * Memory grown while requests are pending, divided by the number of requests. A platform
+   * thread stack is out of heap and shows in rss, a virtual thread stack is in heap.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Footprint {
+    public long heapBytesPerRequest;
+    public long rssBytesPerRequest;
+  }
+
+  // a new executor each time so that platform threads are made in a measurement
+  @Setup(Level.Invocation)
+  public void setUp() throws ReflectiveOperationException {
+    if ("virtual".equals(mode)) {
+      // looked up by reflection, so that sources stay in Java 8
+      final Method factory;
+      try {
+        factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      } catch (NoSuchMethodException e) {
+        throw new IllegalStateException("Virtual mode fails on " + System.getProperty(
+            "java.version"));
+      }
+      executor = (ExecutorService) factory.invoke(null);
+    } else {
+      executor = Executors.newFixedThreadPool(inFlight);
+    }
+    // settle garbage of a previous invocation not to count it, out of a measured time
+    System.gc();
+    heapBefore = usedHeap();
+    rssBefore = rss();
+  }
+
+  @TearDown(Level.Invocation)
+  public void tearDown() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(1L, TimeUnit.MINUTES);
+  }
+
+  @Benchmark
+  public void hold(final Footprint footprint) throws InterruptedException {
+    final CountDownLatch arrived = new CountDownLatch(inFlight);
+    final CountDownLatch released = new CountDownLatch(1);
+    for (int i = 0; i < inFlight; ++i) {
+      executor.execute(() -> {
+        arrived.countDown();
+        try {
+          // blocked as in a commit
+          released.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+    arrived.await();
+
+    footprint.heapBytesPerRequest = (usedHeap() - heapBefore) / inFlight;
+    footprint.rssBytesPerRequest = rssBefore < 0L ? 0L : (rss() - rssBefore) / inFlight;
+    released.countDown();
+  }
+
+  protected static long usedHeap() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  // resident set size in bytes on linux, -1 on others
+  protected static long rss() {
+    try {
+      for (final String line : Files.readAllLines(Paths.get("/proc/self/status"),
+          StandardCharsets.US_ASCII)) {
+        if (line.startsWith("VmRSS:")) {
+          return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024L;
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      // not linux
+    }
+    return -1L;
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.key;
+
+import hera.api.model.Aer;
+import hera.api.model.BytesValue;
+import hera.api.model.ChainIdHash;
+import hera.api.model.Hash;
+import hera.api.model.RawTransaction;
+import hera.api.model.Signature;
+import hera.api.model.Transaction;
+import hera.key.AergoKey;
+import hera.key.AergoKeyGenerator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares signing of a hot key by {@link AergoKey} as in AergoKeyExample with {@link KeySigner}.
+ * Run with {@code -t} of threads to see a per thread signer shared by callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SigningBenchmark {
+
+  protected AergoKey key;
+
+  protected KeySigner signer;
+
+  protected Hash hash;
+
+  protected BytesValue message;
+
+  protected RawTransaction rawTransaction;
+
+  @Setup
+  public void setUp() {
+    key = new AergoKeyGenerator().create();
+    signer = new KeySigner(key);
+    final Random random = new Random(0L);
+    final byte[] hashBytes = new byte[32];
+    random.nextBytes(hashBytes);
+    hash = Hash.of(BytesValue.of(hashBytes));
+    final byte[] messageBytes = new byte[256];
+    random.nextBytes(messageBytes);
+    message = BytesValue.of(messageBytes);
+    rawTransaction = RawTransaction.newBuilder(ChainIdHash.of(BytesValue.EMPTY))
+        .from(key.getAddress())
+        .to(key.getAddress())
+        .amount(Aer.AERGO_ONE)
+        .nonce(1L)
+        .build();
+  }
+
+  @Benchmark
+  public Signature plainSignHash() {
+    return key.signMessage(hash);
+  }
+
+  @Benchmark
+  public Signature signerSignHash() {
+    return signer.sign(hash);
+  }
+
+  @Benchmark
+  public Signature plainSignMessage() {
+    return key.signMessage(message);
+  }
+
+  @Benchmark
+  public Signature signerSignMessage() {
+    return signer.signMessage(message);
+  }
+
+  // hashing a transaction and signing it, as a send does
+  @Benchmark
+  public Transaction plainSignTransaction() {
+    return key.sign(rawTransaction);
+  }
+
+}
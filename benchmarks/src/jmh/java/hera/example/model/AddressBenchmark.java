@@ -0,0 +1,74 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.model;
+
+import hera.api.model.AccountAddress;
+import hera.api.model.BytesValue;
+import hera.api.model.TxHash;
+import hera.key.AergoKeyGenerator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parses and encodes an address and a tx hash, which is done on every request and log line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AddressBenchmark {
+
+  protected AccountAddress address;
+
+  protected String encodedAddress;
+
+  protected TxHash txHash;
+
+  protected String encodedTxHash;
+
+  @Setup
+  public void setUp() {
+    address = new AergoKeyGenerator().create().getAddress();
+    encodedAddress = address.getEncoded();
+
+    final byte[] raw = new byte[32];
+    new Random(32).nextBytes(raw);
+    txHash = TxHash.of(BytesValue.of(raw));
+    encodedTxHash = txHash.getEncoded();
+  }
+
+  @Benchmark
+  public AccountAddress parseAddress() {
+    return AccountAddress.of(encodedAddress);
+  }
+
+  @Benchmark
+  public String encodeAddress() {
+    return address.getEncoded();
+  }
+
+  // includes checksum verification and decoding into an address
+  @Benchmark
+  public BytesValue parseAddressBytes() {
+    return AccountAddress.of(encodedAddress).getBytesValue();
+  }
+
+  @Benchmark
+  public TxHash parseTxHash() {
+    return TxHash.of(encodedTxHash);
+  }
+
+  @Benchmark
+  public String encodeTxHash() {
+    return txHash.getEncoded();
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.model;
+
+import hera.api.encode.Decoder;
+import hera.api.encode.Encoder;
+import hera.api.model.BytesValue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Encodes and decodes {@link BytesValue} as in EncodingExample. A size of 32 is a hash, 256 is a
+ * small payload and 4096 is a large one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EncodingBenchmark {
+
+  @Param({"Hex", "Base58", "Base58Check", "Base64"})
+  protected String encoding;
+
+  @Param({"32", "256", "4096"})
+  protected int size;
+
+  protected Encoder encoder;
+
+  protected Decoder decoder;
+
+  protected BytesValue bytesValue;
+
+  protected String encoded;
+
+  @Setup
+  public void setUp() {
+    switch (encoding) {
+      case "Hex":
+        encoder = Encoder.Hex;
+        decoder = Decoder.Hex;
+        break;
+      case "Base58":
+        encoder = Encoder.Base58;
+        decoder = Decoder.Base58;
+        break;
+      case "Base58Check":
+        encoder = Encoder.Base58Check;
+        decoder = Decoder.Base58Check;
+        break;
+      case "Base64":
+        encoder = Encoder.Base64;
+        decoder = Decoder.Base64;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown encoding: " + encoding);
+    }
+    final byte[] raw = new byte[size];
+    new Random(size).nextBytes(raw);
+    bytesValue = BytesValue.of(raw);
+    encoded = bytesValue.getEncoded(encoder);
+  }
+
+  @Benchmark
+  public String encode() {
+    return bytesValue.getEncoded(encoder);
+  }
+
+  @Benchmark
+  public BytesValue decode() {
+    return BytesValue.of(encoded, decoder);
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.model;
+
+import hera.api.model.Aer;
+import hera.api.model.BytesValue;
+import hera.api.model.ChainIdHash;
+import hera.api.model.Hash;
+import hera.api.model.RawTransaction;
+import hera.api.model.Signature;
+import hera.api.model.Transaction;
+import hera.key.AergoKey;
+import hera.key.AergoKeyGenerator;
+import hera.key.AergoSignVerifier;
+import hera.key.Verifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Hashes, signs and verifies as in AergoKeyExample.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KeyBenchmark {
+
+  protected AergoKey key;
+
+  protected Verifier verifier;
+
+  protected Transaction transaction;
+
+  @Setup
+  public void setUp() {
+    key = new AergoKeyGenerator().create();
+    verifier = new AergoSignVerifier();
+    transaction = key.sign(RawTransaction.newBuilder(ChainIdHash.of(BytesValue.EMPTY))
+        .from(key.getAddress())
+        .to(key.getAddress())
+        .amount(Aer.AERGO_ONE)
+        .nonce(1L)
+        .build());
+  }
+
+  /**
+   * A message signed by a key of benchmark. Kept in its own state so that only message
+   * benchmarks run over sizes.
+   */
+  @State(Scope.Benchmark)
+  public static class Message {
+
+    @Param({"32", "256", "4096"})
+    protected int size;
+
+    protected BytesValue plain;
+
+    protected Hash hashed;
+
+    protected Signature plainSignature;
+
+    protected Signature hashedSignature;
+
+    @Setup
+    public void setUp(final KeyBenchmark benchmark) throws NoSuchAlgorithmException {
+      final byte[] raw = new byte[size];
+      new Random(size).nextBytes(raw);
+      plain = BytesValue.of(raw);
+      hashed = Hash.of(BytesValue.of(MessageDigest.getInstance("SHA-256").digest(raw)));
+      plainSignature = benchmark.key.signMessage(plain);
+      hashedSignature = benchmark.key.signMessage(hashed);
+    }
+  }
+
+  // a digest is not thread-safe, so a new one is made as a caller would
+  @Benchmark
+  public byte[] sha256(final Message message) throws NoSuchAlgorithmException {
+    return MessageDigest.getInstance("SHA-256").digest(message.plain.getValue());
+  }
+
+  @Benchmark
+  public Signature signMessage(final Message message) {
+    return key.signMessage(message.plain);
+  }
+
+  @Benchmark
+  public Signature signHashedMessage(final Message message) {
+    return key.signMessage(message.hashed);
+  }
+
+  @Benchmark
+  public boolean verifyMessage(final Message message) {
+    return verifier.verify(key.getAddress(), message.plain, message.plainSignature);
+  }
+
+  @Benchmark
+  public boolean verifyHashedMessage(final Message message) {
+    return verifier.verify(key.getAddress(), message.hashed, message.hashedSignature);
+  }
+
+  @Benchmark
+  public boolean verifyTransaction() {
+    return verifier.verify(transaction);
+  }
+
+}
@@ -110,9 +110,9 @@ public class NonceProviderExample extends AbstractExample {
         });
       });
 
-      // stop the service
-      service.awaitTermination(3000L, TimeUnit.MILLISECONDS);
+      // stop accepting and wait for submitted ones
       service.shutdown();
+      service.awaitTermination(30000L, TimeUnit.MILLISECONDS);
 
       // should print 1000
       long lastUsedNonce = nonceProvider.getLastUsedNonce(signer.getAddress());
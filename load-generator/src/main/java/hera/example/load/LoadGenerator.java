@@ -0,0 +1,356 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.load;
+
+import hera.api.model.AccountAddress;
+import hera.api.model.Aer;
+import hera.api.model.Aer.Unit;
+import hera.api.model.Block;
+import hera.api.model.ChainIdHash;
+import hera.api.model.Fee;
+import hera.api.model.RawTransaction;
+import hera.api.model.StreamObserver;
+import hera.api.model.Subscription;
+import hera.api.model.Transaction;
+import hera.api.model.TxHash;
+import hera.client.AergoClient;
+import hera.client.AergoClientBuilder;
+import hera.example.support.FakeAergoNode;
+import hera.key.AergoKey;
+import hera.key.AergoKeyGenerator;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * An open-loop load generator. Transactions are scheduled at a fixed rate regardless of how fast
+ * a node responds, and latency is measured from a scheduled time rather than an actual send time.
+ * A stalled node or client delays every later send, and that delay is counted as latency instead
+ * of being hidden (coordinated omission).
+ */
+public class LoadGenerator {
+
+  // an hour in micros
+  protected static final long HIGHEST_TRACKABLE = TimeUnit.HOURS.toMicros(1L);
+
+  public static void main(String[] args) throws Exception {
+    final LoadOptions options = LoadOptions.parse(args);
+    System.out.println("Run " + options);
+    new LoadGenerator(options).run();
+  }
+
+  protected final LoadOptions options;
+
+  // scheduled -> commit responded
+  protected final Histogram commitLatency = new ConcurrentHistogram(HIGHEST_TRACKABLE, 3);
+
+  // actually sent -> commit responded, which hides coordinated omission and is for comparison
+  protected final Histogram commitServiceTime = new ConcurrentHistogram(HIGHEST_TRACKABLE, 3);
+
+  // scheduled -> included in a block, or drain deadline for one not included by then
+  protected final Histogram confirmationLatency = new ConcurrentHistogram(HIGHEST_TRACKABLE, 3);
+
+  // tx hash -> scheduled time in nanos, waiting for a block
+  protected final Map<ByteBuffer, Long> pending = new ConcurrentHashMap<>();
+
+  protected final AtomicLong sent = new AtomicLong(0L);
+
+  protected final AtomicLong failed = new AtomicLong(0L);
+
+  protected final AtomicLong confirmed = new AtomicLong(0L);
+
+  // not included until a drain deadline, recorded at it
+  protected final AtomicLong saturated = new AtomicLong(0L);
+
+  protected AergoClient client;
+
+  protected ChainIdHash chainIdHash;
+
+  protected List<Sender> senders;
+
+  // results scheduled before this are discarded
+  protected long measureFrom;
+
+  LoadGenerator(final LoadOptions options) {
+    this.options = options;
+  }
+
+  protected void run() throws Exception {
+    final List<AergoKey> keys = new ArrayList<>(options.keys);
+    for (int i = 0; i < options.keys; ++i) {
+      keys.add(new AergoKeyGenerator().create());
+    }
+
+    FakeAergoNode fakeNode = null;
+    String endpoint = options.endpoint;
+    if (options.fake) {
+      final FakeAergoNode.Builder builder = FakeAergoNode.newBuilder();
+      for (final AergoKey key : keys) {
+        builder.fund(key.getAddress(), Aer.of(options.fundAmount, Unit.AERGO));
+      }
+      fakeNode = builder.build().start();
+      endpoint = fakeNode.getEndpoint();
+    }
+
+    client = new AergoClientBuilder()
+        .withEndpoint(endpoint)
+        .withNonBlockingConnect()
+        .withPlainText()
+        .build();
+    try {
+      chainIdHash = client.getBlockchainOperation().getBlockchainStatus().getChainIdHash();
+      if (!options.fake) {
+        fund(keys);
+      }
+      senders = new ArrayList<>(keys.size());
+      for (final AergoKey key : keys) {
+        senders.add(new Sender(key,
+            client.getAccountOperation().getState(key.getAddress()).getNonce()));
+      }
+
+      final Subscription<Block> subscription = client.getBlockOperation()
+          .subscribeBlock(new StreamObserver<Block>() {
+            @Override
+            public void onNext(Block block) {
+              onBlock(block);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+              System.err.println("Block stream failed, later confirmations are lost: " + t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+          });
+      try {
+        schedule();
+        drain();
+      } finally {
+        subscription.unsubscribe();
+      }
+      report();
+    } finally {
+      client.close();
+      if (null != fakeNode) {
+        fakeNode.close();
+      }
+    }
+  }
+
+  // dispatch at scheduled times; workers falling behind don't slow down a schedule
+  protected void schedule() throws InterruptedException {
+    final ExecutorService workers = Executors.newFixedThreadPool(options.concurrency, r -> {
+      Thread thread = new Thread(r, "load-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final double interval = TimeUnit.SECONDS.toNanos(1L) / options.rate;
+    final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100L);
+    final long end = start + TimeUnit.SECONDS.toNanos(options.duration);
+    measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmUp);
+
+    for (long i = 0; ; ++i) {
+      final long scheduled = start + (long) (i * interval);
+      if (scheduled >= end) {
+        break;
+      }
+      long wait;
+      while ((wait = scheduled - System.nanoTime()) > 0L) {
+        LockSupport.parkNanos(wait);
+      }
+      final Sender sender = senders.get((int) (i % senders.size()));
+      workers.execute(() -> send(sender, scheduled));
+    }
+
+    workers.shutdown();
+    if (!workers.awaitTermination(options.drain, TimeUnit.SECONDS)) {
+      System.err.println("Workers not finished in " + options.drain + "s, stop them");
+      workers.shutdownNow();
+    }
+  }
+
+  protected void send(final Sender sender, final long scheduled) {
+    final long started = System.nanoTime();
+    // a nonce of a failed commit is reused first not to leave a gap
+    final Long freed = sender.freed.poll();
+    final long nonce = (null != freed) ? freed : sender.nonce.incrementAndGet();
+    final Transaction signed = sender.key.sign(RawTransaction.newBuilder()
+        .chainIdHash(chainIdHash)
+        .from(sender.key.getAddress())
+        .to(sender.key.getAddress())
+        .amount(Aer.ONE)
+        .nonce(nonce)
+        .fee(Fee.EMPTY)
+        .build());
+    final ByteBuffer key = keyOf(signed.getHash());
+
+    // register before commit since a block may come before a response
+    pending.put(key, scheduled);
+    try {
+      client.getTransactionOperation().commit(signed);
+    } catch (Exception e) {
+      pending.remove(key);
+      if (1L == failed.incrementAndGet()) {
+        System.err.println("Commit failed, its nonce is reused by a next one: " + e);
+      }
+      // a reused one failing again may be taken by a node already, not to retry it forever
+      if (null == freed) {
+        sender.freed.add(nonce);
+      } else {
+        System.err.println("Commit of a reused nonce " + nonce + " failed, a gap may be left");
+      }
+      return;
+    }
+    final long now = System.nanoTime();
+    sent.incrementAndGet();
+    if (scheduled >= measureFrom) {
+      record(commitLatency, now - scheduled);
+      record(commitServiceTime, now - started);
+    }
+  }
+
+  protected void onBlock(final Block block) {
+    final long now = System.nanoTime();
+    for (final Transaction tx : block.getTransactions()) {
+      final Long scheduled = pending.remove(keyOf(tx.getHash()));
+      if (null != scheduled) {
+        confirmed.incrementAndGet();
+        if (scheduled >= measureFrom) {
+          record(confirmationLatency, now - scheduled);
+        }
+      }
+    }
+  }
+
+  protected void drain() throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.drain);
+    while (!pending.isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(100L);
+    }
+    // one never included would be missing from latency, so count it as taking until a deadline
+    final long now = System.nanoTime();
+    for (final ByteBuffer key : new ArrayList<>(pending.keySet())) {
+      final Long scheduled = pending.remove(key);
+      if (null != scheduled) {
+        saturated.incrementAndGet();
+        if (scheduled >= measureFrom) {
+          record(confirmationLatency, now - scheduled);
+        }
+      }
+    }
+  }
+
+  protected void fund(final List<AergoKey> keys) throws InterruptedException {
+    final int delimiter = options.richKey.indexOf(':');
+    final AergoKey richKey = AergoKey.of(options.richKey.substring(0, delimiter),
+        options.richKey.substring(delimiter + 1));
+    long nonce = client.getAccountOperation().getState(richKey.getAddress()).getNonce();
+    for (final AergoKey key : keys) {
+      client.getTransactionOperation().commit(richKey.sign(RawTransaction.newBuilder()
+          .chainIdHash(chainIdHash)
+          .from(richKey.getAddress())
+          .to(key.getAddress())
+          .amount(Aer.of(options.fundAmount, Unit.AERGO))
+          .nonce(++nonce)
+          .fee(Fee.EMPTY)
+          .build()));
+    }
+    // wait until funded
+    final AccountAddress last = keys.get(keys.size() - 1).getAddress();
+    final long deadline = System.currentTimeMillis() + 30_000L;
+    while (0 == client.getAccountOperation().getState(last).getBalance().getValue().signum()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new IllegalStateException("Sender keys are not funded in 30s");
+      }
+      Thread.sleep(500L);
+    }
+  }
+
+  protected void report() throws IOException {
+    System.out.println();
+    System.out.println("Sent: " + sent + ", failed: " + failed + ", confirmed: " + confirmed
+        + ", saturated: " + saturated);
+    if (0L < saturated.get()) {
+      System.out.println("Saturated ones not confirmed in " + options.drain
+          + "s drain are recorded as confirmed at its end, a lower bound of latency");
+    }
+    System.out.println("Latency in ms, excluding " + options.warmUp + "s warm-up");
+    summarize("commit", commitLatency);
+    summarize("commit (service time)", commitServiceTime);
+    summarize("confirmation", confirmationLatency);
+
+    if (null != options.output) {
+      final File directory = new File(options.output);
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Cannot make " + directory);
+      }
+      write(new File(directory, "commit.hgrm"), commitLatency);
+      write(new File(directory, "commit-service-time.hgrm"), commitServiceTime);
+      write(new File(directory, "confirmation.hgrm"), confirmationLatency);
+      System.out.println("Histograms written to " + directory.getAbsolutePath());
+    }
+  }
+
+  protected static void summarize(final String name, final Histogram histogram) {
+    System.out.println(String.format(
+        "%-22s count=%d p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f", name,
+        histogram.getTotalCount(), millis(histogram.getValueAtPercentile(50.0)),
+        millis(histogram.getValueAtPercentile(90.0)),
+        millis(histogram.getValueAtPercentile(99.0)),
+        millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue())));
+  }
+
+  // percentile distribution in ms, which HdrHistogram plotter reads
+  protected static void write(final File file, final Histogram histogram) throws IOException {
+    try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
+      histogram.outputPercentileDistribution(out, 1000.0);
+    }
+  }
+
+  protected static void record(final Histogram histogram, final long nanos) {
+    histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE));
+  }
+
+  protected static double millis(final long micros) {
+    return micros / 1000.0;
+  }
+
+  protected static ByteBuffer keyOf(final TxHash txHash) {
+    return ByteBuffer.wrap(txHash.getBytesValue().getValue());
+  }
+
+  protected static class Sender {
+
+    protected final AergoKey key;
+
+    protected final AtomicLong nonce;
+
+    // nonces of failed commits to reuse
+    protected final Queue<Long> freed = new ConcurrentLinkedQueue<>();
+
+    Sender(final AergoKey key, final long lastUsedNonce) {
+      this.key = key;
+      this.nonce = new AtomicLong(lastUsedNonce);
+    }
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.load;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options of {@link LoadGenerator} given as {@code --name=value}.
+ */
+class LoadOptions {
+
+  // node to send, ignored with fake
+  protected String endpoint = "localhost:7845";
+
+  // run against a fake node in this jvm
+  protected boolean fake = false;
+
+  // target arrival rate in tx/s
+  protected double rate = 100.0;
+
+  // seconds to send, including warm-up
+  protected long duration = 60L;
+
+  // seconds whose results are discarded
+  protected long warmUp = 10L;
+
+  // threads signing and committing
+  protected int concurrency = 16;
+
+  // number of sender keys, each with its own nonce sequence
+  protected int keys = 4;
+
+  // {wif}:{password} of a key funding sender keys, required without fake
+  protected String richKey;
+
+  // aergo given to each sender key
+  protected String fundAmount = "10000";
+
+  // seconds to wait for confirmations after sending
+  protected long drain = 30L;
+
+  // directory to write .hgrm files, nullable
+  protected String output;
+
+  static LoadOptions parse(final String[] args) {
+    final Map<String, String> values = new HashMap<>();
+    for (final String arg : args) {
+      if (!arg.startsWith("--")) {
+        throw new IllegalArgumentException("Option must be --{name}={value}: " + arg);
+      }
+      final int delimiter = arg.indexOf('=');
+      if (delimiter < 0) {
+        values.put(arg.substring(2), "true");
+      } else {
+        values.put(arg.substring(2, delimiter), arg.substring(delimiter + 1));
+      }
+    }
+
+    final LoadOptions options = new LoadOptions();
+    options.endpoint = values.getOrDefault("endpoint", options.endpoint);
+    options.fake = Boolean.parseBoolean(values.getOrDefault("fake", "false"));
+    options.rate = Double.parseDouble(values.getOrDefault("rate", "" + options.rate));
+    options.duration = Long.parseLong(values.getOrDefault("duration", "" + options.duration));
+    options.warmUp = Long.parseLong(values.getOrDefault("warm-up", "" + options.warmUp));
+    options.concurrency = Integer.parseInt(
+        values.getOrDefault("concurrency", "" + options.concurrency));
+    options.keys = Integer.parseInt(values.getOrDefault("keys", "" + options.keys));
+    options.richKey = values.get("rich-key");
+    options.fundAmount = values.getOrDefault("fund-amount", options.fundAmount);
+    options.drain = Long.parseLong(values.getOrDefault("drain", "" + options.drain));
+    options.output = values.get("output");
+
+    if (!options.fake && null == options.richKey) {
+      throw new IllegalArgumentException("--rich-key is required without --fake");
+    }
+    if (options.rate <= 0.0 || options.concurrency <= 0 || options.keys <= 0) {
+      throw new IllegalArgumentException("rate, concurrency and keys must be positive");
+    }
+    if (options.warmUp >= options.duration) {
+      throw new IllegalArgumentException("warm-up must be shorter than duration");
+    }
+    return options;
+  }
+
+  @Override
+  public String toString() {
+    return "LoadOptions{endpoint=" + (fake ? "fake" : endpoint) + ", rate=" + rate
+        + "/s, duration=" + duration + "s, warmUp=" + warmUp + "s, concurrency=" + concurrency
+        + ", keys=" + keys + "}";
+  }
+
+}
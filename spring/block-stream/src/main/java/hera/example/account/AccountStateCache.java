@@ -0,0 +1,32 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.account;
+
+import hera.api.model.AccountAddress;
+import hera.api.model.AccountState;
+
+/**
+ * A cache of account states kept until a streamed block has a transaction sent from or to an
+ * account. It's consistent with a node within a block, except for a balance changed by a
+ * contract without a transaction of an account, which is bounded by an expiration.
+ */
+public interface AccountStateCache {
+
+  /**
+   * Get a state of an account, from a node on a miss.
+   *
+   * @param address an account address
+   * @return an account state
+   */
+  AccountState getState(AccountAddress address);
+
+  /**
+   * Invalidate a state of an account so that a next read goes to a node.
+   *
+   * @param address an account address
+   */
+  void invalidate(AccountAddress address);
+
+}
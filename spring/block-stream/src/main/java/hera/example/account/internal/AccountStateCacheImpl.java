@@ -0,0 +1,127 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.account.internal;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import hera.api.model.AccountAddress;
+import hera.api.model.AccountState;
+import hera.api.model.BlockHash;
+import hera.api.model.Transaction;
+import hera.example.account.AccountStateCache;
+import hera.example.routing.AergoClientPool;
+import hera.example.stream.BlockListener;
+import hera.example.stream.BlockStream;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * An account state cache invalidated by transactions of streamed blocks. Everything is
+ * invalidated on a skipped or replaced block and when transactions of a block are unknown. A
+ * state is loaded from a node which has seen a latest streamed block, so that an invalidated one
+ * is not loaded again from a follower lagging behind the block.
+ */
+@Component
+class AccountStateCacheImpl implements AccountStateCache, BlockListener {
+
+  @Value("${aergo.cache.account.enabled:true}")
+  protected boolean enabled;
+
+  @Value("${aergo.cache.account.maximum-size:10000}")
+  protected long maximumSize;
+
+  // reload a touched entry in background instead of evicting it
+  @Value("${aergo.cache.account.refresh:false}")
+  protected boolean refresh;
+
+  // bound of staleness by a contract sending aergo (ms), 0 to disable
+  @Value("${aergo.cache.account.expire-after-write:60000}")
+  protected long expireAfterWrite;
+
+  @Autowired
+  protected AergoClientPool aergoClientPool;
+
+  @Autowired
+  protected BlockStream blockStream;
+
+  @Autowired
+  protected MeterRegistry meterRegistry;
+
+  protected LoadingCache<AccountAddress, AccountState> cache;
+
+  // written by a single block stream thread
+  protected volatile long lastHeight = 0L;
+
+  @PostConstruct
+  protected void init() {
+    final Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats();
+    if (0L < expireAfterWrite) {
+      builder.expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS);
+    }
+    cache = builder.build(this::load);
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "aergo.account");
+    if (enabled) {
+      blockStream.addListener(this);
+    }
+  }
+
+  @Override
+  public AccountState getState(final AccountAddress address) {
+    return enabled ? cache.get(address) : load(address);
+  }
+
+  @Override
+  public void invalidate(final AccountAddress address) {
+    cache.invalidate(address);
+  }
+
+  @Override
+  public boolean requiresTransactions() {
+    return true;
+  }
+
+  @Override
+  public void onTransactions(final long height, final List<Transaction> transactions) {
+    final long previous = lastHeight;
+    // raise a load height first, a refresh loads in background
+    lastHeight = height;
+    if (null == transactions || (0L != previous && height != previous + 1)) {
+      cache.invalidateAll();
+    } else {
+      for (final Transaction transaction : transactions) {
+        touch(transaction.getSender());
+        touch(transaction.getRecipient());
+      }
+    }
+  }
+
+  @Override
+  public void onBlock(final long height, final BlockHash hash) {
+  }
+
+  protected void touch(final AccountAddress address) {
+    if (null == address) {
+      return;
+    }
+    if (refresh && null != cache.getIfPresent(address)) {
+      cache.refresh(address);
+    } else {
+      cache.invalidate(address);
+    }
+  }
+
+  protected AccountState load(final AccountAddress address) {
+    return aergoClientPool.newRoutingClient(lastHeight).getAccountOperation().getState(address);
+  }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import hera.api.model.BlockHash;
+import hera.client.AergoClient;
+import hera.example.stream.BlockStream;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of blocks, transactions and receipts which never change once final. It's a size bounded
+ * W-TinyLFU cache and an entry is stored only if its block is at or below a final height, which
+ * is a lib height of a block stream, or a best height minus a finality depth while a lib is not
+ * known. Hits and misses are exported as {@code cache.gets} of {@code cache=aergo.client}.
+ */
+public class AergoClientCache {
+
+  protected final Cache<CacheKey, Object> cache;
+
+  protected final long finalityDepth;
+
+  protected final AtomicLong bestHeight = new AtomicLong(0L);
+
+  // a stream telling a lib and heights of recent blocks, set after a stream is made
+  protected volatile BlockStream blockStream;
+
+  /**
+   * Create a cache.
+   *
+   * @param maximumSize a max number of entries
+   * @param finalityDepth a number of blocks from a best block to a final one
+   * @param meterRegistry a registry to export metrics
+   */
+  public AergoClientCache(final long maximumSize, final long finalityDepth,
+      final MeterRegistry meterRegistry) {
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats()
+        .build();
+    this.finalityDepth = finalityDepth;
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "aergo.client");
+  }
+
+  /**
+   * Make a client serving cacheable lookups from this cache and passing others to a delegate.
+   *
+   * @param delegate a client to decorate
+   * @return a caching client
+   */
+  public AergoClient decorate(final AergoClient delegate) {
+    return decorate(delegate, null);
+  }
+
+  /**
+   * Make a client like {@link #decorate(AergoClient)}, which also serves contract queries from a
+   * query cache.
+   *
+   * @param delegate a client to decorate
+   * @param queryCache a contract query cache, nullable
+   * @return a caching client
+   */
+  public AergoClient decorate(final AergoClient delegate, final ContractQueryCache queryCache) {
+    final CachingInvocationHandler handler = new CachingInvocationHandler(delegate, this,
+        queryCache);
+    final AergoClient client = (AergoClient) Proxy.newProxyInstance(
+        AergoClient.class.getClassLoader(), new Class<?>[] {AergoClient.class}, handler);
+    handler.self = client;
+    return client;
+  }
+
+  /**
+   * Notify a best height, which moves a final height.
+   *
+   * @param height a block height
+   */
+  public void observeBestHeight(final long height) {
+    bestHeight.accumulateAndGet(height, Math::max);
+  }
+
+  /**
+   * Set a block stream to take a lib height as a final one and to look up heights of recent
+   * blocks without calling a node.
+   *
+   * @param blockStream a block stream
+   */
+  public void setBlockStream(final BlockStream blockStream) {
+    this.blockStream = blockStream;
+  }
+
+  /**
+   * Get a height at and below which blocks are treated final.
+   *
+   * @return a final height, 0 if neither a lib nor a best height is known
+   */
+  public long getFinalHeight() {
+    final BlockStream stream = blockStream;
+    final long lib = (null != stream) ? stream.getLibHeight() : 0L;
+    if (0L != lib) {
+      return lib;
+    }
+    final long best = bestHeight.get();
+    return (0L == best) ? 0L : Math.max(0L, best - finalityDepth);
+  }
+
+  // a height of a recently streamed block, 0 if unknown
+  long getRecentHeight(final BlockHash hash) {
+    final BlockStream stream = blockStream;
+    return (null != stream) ? stream.getRecentHeight(hash) : 0L;
+  }
+
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  Object get(final CacheKey key) {
+    return cache.getIfPresent(key);
+  }
+
+  // store a value of a block height if it's final
+  void putIfFinal(final CacheKey key, final Object value, final long height) {
+    if (0L < height && height <= getFinalHeight()) {
+      cache.put(key, value);
+    }
+  }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.cache;
+
+/**
+ * A key of a lookup, a method name with its argument.
+ */
+final class CacheKey {
+
+  protected final String method;
+
+  protected final Object argument;
+
+  CacheKey(final String method, final Object argument) {
+    this.method = method;
+    this.argument = argument;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (!(obj instanceof CacheKey)) {
+      return false;
+    }
+    final CacheKey other = (CacheKey) obj;
+    return method.equals(other.method) && argument.equals(other.argument);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * method.hashCode() + argument.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return method + "(" + argument + ")";
+  }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.cache;
+
+import hera.api.model.Block;
+import hera.api.model.BlockHash;
+import hera.api.model.BlockMetadata;
+import hera.api.model.ContractInvocation;
+import hera.api.model.ContractTxReceipt;
+import hera.api.model.Transaction;
+import hera.api.model.TxReceipt;
+import hera.client.AergoClient;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves lookups of immutable objects from {@link AergoClientCache}. An operation returned by a
+ * client is also a proxy like {@code RoutingInvocationHandler}. A transaction carries a block
+ * hash only, so its height is taken from recent blocks of a stream, or else looked up by a block
+ * metadata, which is cached in turn. A contract
+ * query goes to {@link ContractQueryCache} if given, which calls a node on its own.
+ */
+class CachingInvocationHandler implements InvocationHandler {
+
+  // lookups taking a single hash or height
+  protected static final Set<String> CACHEABLE = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList("getBlock", "getBlockMetadata", "getTransaction", "getTxReceipt",
+          "getContractTxReceipt")));
+
+  protected final AergoClient delegate;
+
+  // either of them is nullable
+  protected final AergoClientCache cache;
+
+  protected final ContractQueryCache queryCache;
+
+  // a caching client of this, set after a proxy is made
+  protected volatile AergoClient self;
+
+  // operation getter -> caching operation proxy
+  protected final Map<Method, Object> operations = new ConcurrentHashMap<>();
+
+  CachingInvocationHandler(final AergoClient delegate, final AergoClientCache cache,
+      final ContractQueryCache queryCache) {
+    this.delegate = delegate;
+    this.cache = cache;
+    this.queryCache = queryCache;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (Object.class.equals(method.getDeclaringClass())) {
+      return invokeObjectMethod(proxy, method, args);
+    }
+    if (method.getName().startsWith("get") && method.getName().endsWith("Operation")
+        && (null == args || 0 == args.length)) {
+      return operations.computeIfAbsent(method, this::newOperationProxy);
+    }
+    return invokeOn(delegate, method, args);
+  }
+
+  protected Object newOperationProxy(final Method getter) {
+    final Class<?> type = getter.getReturnType();
+    final Object target;
+    try {
+      target = getter.invoke(delegate);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot get an operation of " + getter, e);
+    }
+    return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+        (proxy, method, args) -> {
+          if (Object.class.equals(method.getDeclaringClass())) {
+            return invokeObjectMethod(proxy, method, args);
+          }
+          if (null == args || 1 != args.length) {
+            return invokeOn(target, method, args);
+          }
+          if (null != queryCache && "query".equals(method.getName())
+              && args[0] instanceof ContractInvocation) {
+            return queryCache.query((ContractInvocation) args[0]);
+          }
+          if (null == cache || !CACHEABLE.contains(method.getName())) {
+            return invokeOn(target, method, args);
+          }
+          return invokeCached(target, method, args[0]);
+        });
+  }
+
+  protected Object invokeCached(final Object target, final Method method, final Object argument)
+      throws Throwable {
+    final CacheKey key = new CacheKey(method.getName(), argument);
+    final Object cached = cache.get(key);
+    if (null != cached) {
+      return cached;
+    }
+    final Object result = invokeOn(target, method, new Object[] {argument});
+    if (null != result) {
+      cache.putIfFinal(key, result, heightOf(result));
+    }
+    return result;
+  }
+
+  // a block height of a result, 0 if unknown or not in a block
+  protected long heightOf(final Object result) {
+    if (result instanceof Block) {
+      return ((Block) result).getBlockHeader().getBlockNumber();
+    } else if (result instanceof BlockMetadata) {
+      return ((BlockMetadata) result).getBlockHeader().getBlockNumber();
+    } else if (result instanceof TxReceipt) {
+      return ((TxReceipt) result).getBlockNumber();
+    } else if (result instanceof ContractTxReceipt) {
+      return ((ContractTxReceipt) result).getBlockNumber();
+    } else if (result instanceof Transaction) {
+      final Transaction transaction = (Transaction) result;
+      if (!transaction.isConfirmed() || 0L == cache.getFinalHeight()) {
+        return 0L;
+      }
+      final BlockHash blockHash = transaction.getBlockHash();
+      // a recent block is known to a stream, not to call a node for it
+      final long recent = cache.getRecentHeight(blockHash);
+      if (0L != recent) {
+        return recent;
+      }
+      final BlockMetadata metadata = self.getBlockOperation().getBlockMetadata(blockHash);
+      return (null != metadata) ? metadata.getBlockHeader().getBlockNumber() : 0L;
+    }
+    return 0L;
+  }
+
+  protected static Object invokeOn(final Object target, final Method method, final Object[] args)
+      throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  protected static Object invokeObjectMethod(final Object proxy, final Method method,
+      final Object[] args) {
+    switch (method.getName()) {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      default:
+        return "CachingAergoClient";
+    }
+  }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import hera.api.model.ContractInvocation;
+import hera.api.model.ContractResult;
+import hera.api.model.Transaction;
+import hera.client.AergoClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * A cache of contract view queries keyed by a contract address, a function and json encoded
+ * arguments. A result is stamped with a block height when its query started and is valid while
+ * no later block has a transaction to the contract. Concurrent identical queries share one call.
+ * A query goes to a node which has seen a block of its stamp, so that a lagging follower doesn't
+ * answer a state older than a stamp.
+ *
+ * <p>Touched heights are kept for as many contracts as results and expire with them. A contract
+ * tracked again starts at a current height, so that its results stamped before are not served.
+ *
+ * <p>A contract changed only by a call from another contract is not seen in transactions, which
+ * is bounded by an expiration.
+ */
+public class ContractQueryCache {
+
+  protected final Cache<QueryKey, CompletableFuture<Stamped>> cache;
+
+  protected final ObjectMapper objectMapper = new ObjectMapper();
+
+  // encoded contract address -> height of latest block having a tx to it, for queried ones only
+  protected final Cache<String, AtomicLong> touchedHeights;
+
+  // height of latest processed block
+  protected final AtomicLong currentHeight = new AtomicLong(0L);
+
+  // results stamped below this are invalid, moved on a replaced or skipped block
+  protected final AtomicLong resetHeight = new AtomicLong(0L);
+
+  protected final Counter collapsed;
+
+  // height -> client of a node which has seen a block of the height
+  protected final LongFunction<AergoClient> clientAt;
+
+  /**
+   * Create a cache.
+   *
+   * @param maximumSize a max number of entries
+   * @param expireAfterWrite a max age of a result in milliseconds, 0 not to expire
+   * @param meterRegistry a registry to export metrics
+   * @param clientAt a factory of a client calling a node which has seen a block of a height, like
+   *     {@code AergoClientPool#newRoutingClient(long)}
+   */
+  public ContractQueryCache(final long maximumSize, final long expireAfterWrite,
+      final MeterRegistry meterRegistry, final LongFunction<AergoClient> clientAt) {
+    final Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats();
+    if (0L < expireAfterWrite) {
+      builder.expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS);
+    }
+    this.cache = builder.build();
+    final Caffeine<Object, Object> touchedBuilder = Caffeine.newBuilder()
+        .maximumSize(maximumSize);
+    if (0L < expireAfterWrite) {
+      // no result of a contract not queried for this long is left
+      touchedBuilder.expireAfterAccess(expireAfterWrite, TimeUnit.MILLISECONDS);
+    }
+    this.touchedHeights = touchedBuilder.build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "aergo.query");
+    this.collapsed = Counter.builder("aergo.query.collapsed")
+        .description("Queries waiting for an identical one in flight")
+        .register(meterRegistry);
+    this.clientAt = clientAt;
+  }
+
+  /**
+   * Make a client serving contract queries from this cache and passing others to a delegate. Use
+   * {@link AergoClientCache#decorate(AergoClient, ContractQueryCache)} to cache final lookups too.
+   *
+   * @param delegate a client to decorate
+   * @return a caching client
+   */
+  public AergoClient decorate(final AergoClient delegate) {
+    final CachingInvocationHandler handler = new CachingInvocationHandler(delegate, null, this);
+    final AergoClient client = (AergoClient) Proxy.newProxyInstance(
+        AergoClient.class.getClassLoader(), new Class<?>[] {AergoClient.class}, handler);
+    handler.self = client;
+    return client;
+  }
+
+  /**
+   * Get a result of a query, calling a node on a miss. A query of which arguments can't be
+   * encoded is not cached.
+   *
+   * @param invocation a contract invocation
+   * @return a query result
+   */
+  public ContractResult query(final ContractInvocation invocation) {
+    final QueryKey key = keyOf(invocation);
+    if (null == key) {
+      return load(invocation, currentHeight.get());
+    }
+    final AtomicLong touched = touchedHeights.get(key.contract,
+        k -> new AtomicLong(currentHeight.get()));
+    while (true) {
+      final CompletableFuture<Stamped> cached = cache.getIfPresent(key);
+      if (null != cached) {
+        if (!cached.isDone()) {
+          collapsed.increment();
+        }
+        final Stamped stamped;
+        try {
+          stamped = cached.join();
+        } catch (CompletionException e) {
+          throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+        }
+        if (stamped.height >= Math.max(touched.get(), resetHeight.get())) {
+          return stamped.result;
+        }
+        cache.asMap().remove(key, cached);
+        continue;
+      }
+
+      final CompletableFuture<Stamped> loading = new CompletableFuture<>();
+      if (null != cache.asMap().putIfAbsent(key, loading)) {
+        continue;
+      }
+      // stamp before a call, a block processed during a call invalidates it
+      final long height = currentHeight.get();
+      try {
+        final ContractResult result = load(invocation, height);
+        loading.complete(new Stamped(height, result));
+        return result;
+      } catch (RuntimeException e) {
+        cache.asMap().remove(key, loading);
+        loading.completeExceptionally(e);
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Notify transactions of a block, before {@link #observeBlock(long)} of the block.
+   *
+   * @param height a block height
+   * @param transactions transactions in a block, null if unknown
+   */
+  public void observeTransactions(final long height, final List<Transaction> transactions) {
+    final long current = currentHeight.get();
+    if (null == transactions || (0L != current && height != current + 1)) {
+      resetHeight.accumulateAndGet(height, Math::max);
+      return;
+    }
+    for (final Transaction transaction : transactions) {
+      if (null == transaction.getRecipient()) {
+        continue;
+      }
+      final AtomicLong touched = touchedHeights.getIfPresent(
+          transaction.getRecipient().getEncoded());
+      if (null != touched) {
+        touched.accumulateAndGet(height, Math::max);
+      }
+    }
+  }
+
+  /**
+   * Notify a processed block.
+   *
+   * @param height a block height
+   */
+  public void observeBlock(final long height) {
+    currentHeight.set(height);
+  }
+
+  protected ContractResult load(final ContractInvocation invocation, final long height) {
+    return clientAt.apply(height).getContractOperation().query(invocation);
+  }
+
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  protected QueryKey keyOf(final ContractInvocation invocation) {
+    try {
+      return new QueryKey(invocation.getAddress().getEncoded(),
+          invocation.getFunction().getName(),
+          objectMapper.writeValueAsString(invocation.getArgs()));
+    } catch (JsonProcessingException e) {
+      return null;
+    }
+  }
+
+  protected static class QueryKey {
+
+    protected final String contract;
+    protected final String function;
+    protected final String args;
+
+    QueryKey(final String contract, final String function, final String args) {
+      this.contract = contract;
+      this.function = function;
+      this.args = args;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof QueryKey)) {
+        return false;
+      }
+      final QueryKey other = (QueryKey) obj;
+      return contract.equals(other.contract) && function.equals(other.function)
+          && args.equals(other.args);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * contract.hashCode() + function.hashCode()) + args.hashCode();
+    }
+  }
+
+  protected static class Stamped {
+
+    protected final long height;
+    protected final ContractResult result;
+
+    Stamped(final long height, final ContractResult result) {
+      this.height = height;
+      this.result = result;
+    }
+  }
+
+}
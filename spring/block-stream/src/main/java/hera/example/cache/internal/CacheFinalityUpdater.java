@@ -0,0 +1,39 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.cache.internal;
+
+import hera.api.model.BlockHash;
+import hera.example.cache.AergoClientCache;
+import hera.example.stream.BlockListener;
+import hera.example.stream.BlockStream;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves a final height of {@link AergoClientCache} along a block stream, and lets it take a lib
+ * and recent blocks from the stream.
+ */
+@Component
+class CacheFinalityUpdater implements BlockListener {
+
+  @Autowired
+  protected AergoClientCache aergoClientCache;
+
+  @Autowired
+  protected BlockStream blockStream;
+
+  @PostConstruct
+  protected void init() {
+    aergoClientCache.setBlockStream(blockStream);
+    blockStream.addListener(this);
+  }
+
+  @Override
+  public void onBlock(long height, BlockHash hash) {
+    aergoClientCache.observeBestHeight(height);
+  }
+
+}
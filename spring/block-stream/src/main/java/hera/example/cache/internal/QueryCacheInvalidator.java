@@ -0,0 +1,55 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.cache.internal;
+
+import hera.api.model.BlockHash;
+import hera.api.model.Transaction;
+import hera.example.cache.ContractQueryCache;
+import hera.example.stream.BlockListener;
+import hera.example.stream.BlockStream;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Passes transactions of streamed blocks to {@link ContractQueryCache}.
+ */
+@Component
+class QueryCacheInvalidator implements BlockListener {
+
+  @Value("${aergo.cache.query.enabled:true}")
+  protected boolean enabled;
+
+  @Autowired
+  protected ContractQueryCache contractQueryCache;
+
+  @Autowired
+  protected BlockStream blockStream;
+
+  @PostConstruct
+  protected void init() {
+    if (enabled) {
+      blockStream.addListener(this);
+    }
+  }
+
+  @Override
+  public boolean requiresTransactions() {
+    return true;
+  }
+
+  @Override
+  public void onTransactions(long height, List<Transaction> transactions) {
+    contractQueryCache.observeTransactions(height, transactions);
+  }
+
+  @Override
+  public void onBlock(long height, BlockHash hash) {
+    contractQueryCache.observeBlock(height);
+  }
+
+}
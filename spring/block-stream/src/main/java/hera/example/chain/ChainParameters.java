@@ -0,0 +1,29 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.chain;
+
+import hera.api.model.BlockHash;
+import hera.api.model.ChainIdHash;
+import hera.api.model.ChainInfo;
+
+/**
+ * A cache of chain-wide values. Reads are lock-free and never go to a node once warmed up.
+ */
+public interface ChainParameters {
+
+  ChainIdHash getChainIdHash();
+
+  ChainInfo getChainInfo();
+
+  /**
+   * Get a height of a latest block seen by a block stream.
+   *
+   * @return a best block height
+   */
+  long getBestHeight();
+
+  BlockHash getBestBlockHash();
+
+}
@@ -0,0 +1,175 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.chain.internal;
+
+import hera.api.model.BlockHash;
+import hera.api.model.BlockchainStatus;
+import hera.api.model.ChainIdHash;
+import hera.api.model.ChainInfo;
+import hera.client.AergoClient;
+import hera.example.chain.ChainParameters;
+import hera.example.stream.BlockListener;
+import hera.example.stream.BlockStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+class ChainParametersImpl implements ChainParameters, BlockListener {
+
+  // refresh chain id and chain info every this number of blocks
+  @Value("${aergo.chain.refresh-interval:100}")
+  protected long refreshInterval;
+
+  @Autowired
+  protected AergoClient aergoClient;
+
+  @Autowired
+  protected BlockStream blockStream;
+
+  // replaced by a block stream and a refresher, so updated atomically
+  protected final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+  protected final Object lock = new Object();
+
+  protected final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+  // height of a last streamed block, 0 before a first one. A polled best height is not compared
+  // with it since a polled node is usually ahead of a stream
+  protected final AtomicLong streamedHeight = new AtomicLong(0L);
+
+  protected ExecutorService refresher;
+
+  @PostConstruct
+  protected void init() {
+    refresher = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "chain-parameters-refresher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      snapshot.set(fetch());
+    } catch (Exception e) {
+      // fetched on first read
+      System.err.println("Warming up chain parameters failed: " + e);
+    }
+    blockStream.addListener(this);
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    refresher.shutdownNow();
+  }
+
+  @Override
+  public ChainIdHash getChainIdHash() {
+    return current().chainIdHash;
+  }
+
+  @Override
+  public ChainInfo getChainInfo() {
+    return current().chainInfo;
+  }
+
+  @Override
+  public long getBestHeight() {
+    return current().bestHeight;
+  }
+
+  @Override
+  public BlockHash getBestBlockHash() {
+    return current().bestBlockHash;
+  }
+
+  @Override
+  public void onBlock(long height, BlockHash hash) {
+    // a streamed block is canonical, even if lower on a reorg or a reset
+    final Snapshot previous = snapshot.getAndUpdate(
+        current -> (null != current) ? current.withBest(height, hash) : null);
+    final long streamed = streamedHeight.getAndSet(height);
+    if (null == previous) {
+      refreshAsync();
+      return;
+    }
+    // a streamed height dropped may be a chain reset with a new chain id
+    if (height < streamed || height - previous.refreshedHeight >= refreshInterval) {
+      refreshAsync();
+    }
+  }
+
+  protected Snapshot current() {
+    Snapshot current = snapshot.get();
+    if (null == current) {
+      synchronized (lock) {
+        if (null == snapshot.get()) {
+          snapshot.compareAndSet(null, fetch());
+        }
+        current = snapshot.get();
+      }
+    }
+    return current;
+  }
+
+  protected void refreshAsync() {
+    if (!refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    refresher.execute(() -> {
+      try {
+        final Snapshot fetched = fetch();
+        // a best one stays as streamed, which is canonical over a reset too
+        final Snapshot previous = snapshot.getAndUpdate(current ->
+            (null != current && 0L != streamedHeight.get())
+                ? fetched.withBest(current.bestHeight, current.bestBlockHash) : fetched);
+        if (null != previous && !previous.chainIdHash.equals(fetched.chainIdHash)) {
+          System.err.println("Chain id hash changed: " + previous.chainIdHash + " -> "
+              + fetched.chainIdHash);
+        }
+      } catch (Exception e) {
+        System.err.println("Refreshing chain parameters failed: " + e);
+      } finally {
+        refreshing.set(false);
+      }
+    });
+  }
+
+  protected Snapshot fetch() {
+    final BlockchainStatus status = aergoClient.getBlockchainOperation().getBlockchainStatus();
+    final ChainInfo chainInfo = aergoClient.getBlockchainOperation().getChainInfo();
+    return new Snapshot(status.getChainIdHash(), chainInfo, status.getBestHeight(),
+        status.getBestBlockHash(), status.getBestHeight());
+  }
+
+  // immutable, replaced as a whole
+  protected static class Snapshot {
+
+    protected final ChainIdHash chainIdHash;
+    protected final ChainInfo chainInfo;
+    protected final long bestHeight;
+    protected final BlockHash bestBlockHash;
+    protected final long refreshedHeight;
+
+    Snapshot(final ChainIdHash chainIdHash, final ChainInfo chainInfo, final long bestHeight,
+        final BlockHash bestBlockHash, final long refreshedHeight) {
+      this.chainIdHash = chainIdHash;
+      this.chainInfo = chainInfo;
+      this.bestHeight = bestHeight;
+      this.bestBlockHash = bestBlockHash;
+      this.refreshedHeight = refreshedHeight;
+    }
+
+    Snapshot withBest(final long height, final BlockHash hash) {
+      return new Snapshot(chainIdHash, chainInfo, height, hash, refreshedHeight);
+    }
+  }
+
+}
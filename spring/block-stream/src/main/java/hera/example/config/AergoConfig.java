@@ -4,13 +4,16 @@
 
 package hera.example.config;
 
-import hera.api.model.ChainIdHash;
-import hera.api.transaction.NonceProvider;
-import hera.api.transaction.SimpleNonceProvider;
 import hera.client.AergoClient;
-import hera.client.AergoClientBuilder;
+import hera.example.cache.AergoClientCache;
+import hera.example.cache.ContractQueryCache;
+import hera.example.routing.AergoClientPool;
 import hera.key.AergoKey;
-import java.util.function.Supplier;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -24,44 +27,91 @@ public class AergoConfig {
   @Value("${aergo.server.port}")
   protected String port;
 
+  // comma separated {hostname}:{port}, overrides hostname and port if set
+  @Value("${aergo.server.endpoints:}")
+  protected String endpoints;
+
+  // comma separated {hostname}:{port} for queries, endpoints if not set
+  @Value("${aergo.server.readers:}")
+  protected String readers;
+
+  // comma separated {hostname}:{port} for commits, endpoints if not set
+  @Value("${aergo.server.writers:}")
+  protected String writers;
+
+  @Value("${aergo.server.read-your-writes:true}")
+  protected boolean readYourWrites;
+
+  @Value("${aergo.server.channels-per-endpoint:2}")
+  protected int channelsPerEndpoint;
+
+  @Value("${aergo.server.timeout:5000}")
+  protected long timeout;
+
+  @Value("${aergo.server.health-check.interval:2000}")
+  protected long healthCheckInterval;
+
+  @Value("${aergo.server.health-check.max-failures:3}")
+  protected int maxFailures;
+
+  // cache final blocks, transactions and receipts
+  @Value("${aergo.cache.enabled:true}")
+  protected boolean cacheEnabled;
+
+  @Value("${aergo.cache.maximum-size:100000}")
+  protected long cacheMaximumSize;
+
+  // number of blocks from a best block to a final one
+  @Value("${aergo.cache.finality-depth:30}")
+  protected long cacheFinalityDepth;
+
+  // cache contract queries until a block has a tx to a contract
+  @Value("${aergo.cache.query.enabled:true}")
+  protected boolean queryCacheEnabled;
+
+  @Value("${aergo.cache.query.maximum-size:10000}")
+  protected long queryCacheMaximumSize;
+
+  // bound of staleness by a call from another contract (ms), 0 to disable
+  @Value("${aergo.cache.query.expire-after-write:60000}")
+  protected long queryCacheExpireAfterWrite;
+
   @Value("${aergo.account.from.wif}")
   protected String walletImportFormat;
 
   @Value("${aergo.account.from.password}")
   protected String password;
 
-  @Bean
-  public AergoClient aergoClient() {
-    return new AergoClientBuilder()
-        .withEndpoint(hostname + ":" + port)
-        .withPlainText()
-        .build();
+  @Autowired
+  protected MeterRegistry meterRegistry;
+
+  @Bean(destroyMethod = "close")
+  public AergoClientPool aergoClientPool() {
+    final List<String> defaults = split(endpoints,
+        Collections.singletonList(hostname + ":" + port));
+    return new AergoClientPool(split(readers, defaults), split(writers, defaults),
+        channelsPerEndpoint, timeout, maxFailures, healthCheckInterval, readYourWrites);
   }
 
   @Bean
-  public Supplier<ChainIdHash> chainIdHashSupplier() {
-    return new Supplier<ChainIdHash>() {
-
-      protected final Object lock = new Object();
-      protected ChainIdHash cache;
-
-      @Override
-      public ChainIdHash get() {
-        if (null == cache) {
-          synchronized (lock) {
-            if (null == cache) {
-              cache = aergoClient().getBlockchainOperation().getChainIdHash();
-            }
-          }
-        }
-        return cache;
-      }
-    };
+  public AergoClientCache aergoClientCache() {
+    return new AergoClientCache(cacheMaximumSize, cacheFinalityDepth, meterRegistry);
   }
 
   @Bean
-  public NonceProvider nonceProvider() {
-    return new SimpleNonceProvider();
+  public ContractQueryCache contractQueryCache() {
+    return new ContractQueryCache(queryCacheMaximumSize, queryCacheExpireAfterWrite,
+        meterRegistry, aergoClientPool()::newRoutingClient);
+  }
+
+  @Bean(destroyMethod = "")
+  public AergoClient aergoClient() {
+    final AergoClient routing = aergoClientPool().newRoutingClient();
+    if (cacheEnabled) {
+      return aergoClientCache().decorate(routing,
+          queryCacheEnabled ? contractQueryCache() : null);
+    }
+    return queryCacheEnabled ? contractQueryCache().decorate(routing) : routing;
   }
 
   @Bean
@@ -69,4 +119,17 @@ public class AergoConfig {
     return AergoKey.of(walletImportFormat, password);
   }
 
+  protected static List<String> split(final String value, final List<String> fallback) {
+    final List<String> values = new ArrayList<>();
+    for (final String each : value.split(",")) {
+      if (!each.trim().isEmpty()) {
+        values.add(each.trim());
+      }
+    }
+    if (values.isEmpty()) {
+      values.addAll(fallback);
+    }
+    return values;
+  }
+
 }
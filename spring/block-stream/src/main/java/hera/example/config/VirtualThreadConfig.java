@@ -0,0 +1,32 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.config;
+
+import java.util.concurrent.ExecutorService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs each request on a virtual thread instead of a tomcat worker pool, so that a request
+ * blocking in a heraj call doesn't hold a platform thread. Requires Java 21 at runtime.
+ */
+@Configuration
+@ConditionalOnProperty(name = "aergo.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService requestExecutor() {
+    return VirtualThreads.newExecutor();
+  }
+
+  @Bean
+  public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+    final ExecutorService executor = requestExecutor();
+    return protocolHandler -> protocolHandler.setExecutor(executor);
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads of Java 21 looked up by reflection, so that sources stay in Java 8.
+ */
+final class VirtualThreads {
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Make an executor starting a new virtual thread for each task.
+   *
+   * @return an executor
+   * @throws IllegalStateException if a runtime is older than Java 21
+   */
+  static ExecutorService newExecutor() {
+    final Method factory = findFactory();
+    if (null == factory) {
+      throw new IllegalStateException("Virtual threads require Java 21 or later, running on "
+          + System.getProperty("java.version"));
+    }
+    try {
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  protected static Method findFactory() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+}
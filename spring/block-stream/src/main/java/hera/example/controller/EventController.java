@@ -0,0 +1,91 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hera.api.model.ContractAddress;
+import hera.api.model.EventFilter;
+import hera.example.event.EventIndex;
+import hera.example.event.IndexedEvent;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class EventController {
+
+  @Autowired
+  protected EventIndex eventIndex;
+
+  @Autowired
+  protected ObjectMapper objectMapper;
+
+  /**
+   * List events of a contract as {@code listEvents} of a node does.
+   *
+   * @param contract a contract address
+   * @param name an event name, empty for all
+   * @param args leading arguments in json, a plain string if not a json
+   * @param from a first block number
+   * @param to a last block number, 0 for an indexed height
+   * @param recent a recent block count, overrides from and to if positive
+   * @return matching events
+   * @throws IOException if arguments of an event are not a json
+   */
+  @GetMapping("/events")
+  public List<Map<String, Object>> list(
+      @RequestParam(name = "contract") String contract,
+      @RequestParam(name = "name", defaultValue = "") String name,
+      @RequestParam(name = "arg", required = false) List<String> args,
+      @RequestParam(name = "from", defaultValue = "0") long from,
+      @RequestParam(name = "to", defaultValue = "0") long to,
+      @RequestParam(name = "recent", defaultValue = "0") int recent) throws IOException {
+    EventFilter.Builder builder = EventFilter.newBuilder(ContractAddress.of(contract));
+    if (!name.isEmpty()) {
+      builder.eventName(name);
+    }
+    if (null != args && !args.isEmpty()) {
+      builder.args(parseArgs(args));
+    }
+    if (0 < recent) {
+      builder.recentBlockCount(recent);
+    } else {
+      builder.fromBlockNumber(from).toBlockNumber(to);
+    }
+
+    List<Map<String, Object>> body = new ArrayList<>();
+    for (IndexedEvent event : eventIndex.list(builder.build())) {
+      Map<String, Object> each = new LinkedHashMap<>();
+      each.put("eventName", event.getEventName());
+      each.put("args", objectMapper.readTree(event.getJsonArgs()));
+      each.put("blockNumber", event.getBlockNumber());
+      each.put("txIndex", event.getTxIndex());
+      each.put("index", event.getIndex());
+      each.put("txHash", event.getTxHash().toString());
+      each.put("blockHash", event.getBlockHash().toString());
+      body.add(each);
+    }
+    return body;
+  }
+
+  protected Object[] parseArgs(List<String> args) {
+    Object[] parsed = new Object[args.size()];
+    for (int i = 0; i < parsed.length; ++i) {
+      try {
+        parsed[i] = objectMapper.readValue(args.get(i), Object.class);
+      } catch (IOException e) {
+        parsed[i] = args.get(i);
+      }
+    }
+    return parsed;
+  }
+
+}
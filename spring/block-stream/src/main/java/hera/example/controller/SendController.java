@@ -4,14 +4,32 @@
 
 package hera.example.controller;
 
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.Collectors.toList;
+
 import hera.api.model.AccountAddress;
 import hera.api.model.Aer;
-import hera.api.model.TxHash;
+import hera.example.service.ShuttingDownException;
+import hera.example.service.Submission;
 import hera.example.service.TransactionService;
+import hera.example.service.Transfer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -20,20 +38,102 @@ public class SendController {
   @Value("${aergo.account.to.address}")
   protected String toAddress;
 
+  // seconds for a client to retry on another instance while shutting down
+  @Value("${aergo.shutdown.retry-after:5}")
+  protected long retryAfter;
+
   @Autowired
   protected TransactionService transactionService;
 
+  /**
+   * Send a transaction. A servlet thread is released while waiting for confirmation.
+   *
+   * @param wait if false, respond 202 with a tx hash just after commit
+   * @return a tx hash
+   */
   @GetMapping("/send")
-  public void send() {
-    try {
-      AccountAddress recipient = AccountAddress.of(toAddress);
-      System.out.println("Send request to " + recipient);
-      CompletableFuture<TxHash> future = transactionService.send(recipient, Aer.ONE);
-      TxHash txHash = future.get();
-      System.out.println("== Confirmed: " + txHash);
-    } catch (Exception e) {
-      throw new IllegalStateException(e);
+  public CompletableFuture<ResponseEntity<String>> send(
+      @RequestParam(name = "wait", defaultValue = "true") boolean wait) {
+    AccountAddress recipient = AccountAddress.of(toAddress);
+    Submission submission = transactionService.submit(recipient, Aer.ONE);
+    if (!wait) {
+      return completedFuture(ResponseEntity.status(HttpStatus.ACCEPTED)
+          .body(submission.getTxHash().toString()));
+    }
+
+    return submission.getConfirmation()
+        .thenApply(txHash -> ResponseEntity.ok(txHash.toString()))
+        .exceptionally(e -> {
+          Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+          HttpStatus status;
+          if (cause instanceof TimeoutException) {
+            status = HttpStatus.GATEWAY_TIMEOUT;
+          } else if (cause instanceof CancellationException) {
+            // handed off on shutdown, it's committed and still can be confirmed
+            status = HttpStatus.ACCEPTED;
+          } else {
+            status = HttpStatus.INTERNAL_SERVER_ERROR;
+          }
+          return ResponseEntity.status(status).body(submission.getTxHash().toString());
+        });
+  }
+
+  /**
+   * Send transactions in a batch.
+   *
+   * @param requests transfers to send
+   * @param wait if false, respond 202 with tx hashes just after signing
+   * @return a map of tx hash to its result
+   */
+  @PostMapping("/send/batch")
+  public CompletableFuture<ResponseEntity<Map<String, String>>> sendBatch(
+      @RequestBody List<TransferRequest> requests,
+      @RequestParam(name = "wait", defaultValue = "true") boolean wait) {
+    List<Transfer> transfers = requests.stream()
+        .map(r -> new Transfer(AccountAddress.of(r.getRecipient()), Aer.of(r.getAmount())))
+        .collect(toList());
+    List<Submission> submissions = transactionService.submitBatch(transfers);
+
+    if (!wait) {
+      Map<String, String> accepted = new LinkedHashMap<>();
+      for (int i = 0; i < submissions.size(); ++i) {
+        final Submission submission = submissions.get(i);
+        accepted.put(keyOf(i, submission), submission.getConfirmation().isCompletedExceptionally()
+            ? "FAILED" : "ACCEPTED");
+      }
+      return completedFuture(ResponseEntity.status(HttpStatus.ACCEPTED).body(accepted));
     }
+
+    List<CompletableFuture<String>> results = submissions.stream()
+        .map(s -> s.getConfirmation()
+            .thenApply(txHash -> "CONFIRMED")
+            .exceptionally(e -> {
+              Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+              return (cause instanceof CancellationException) ? "ACCEPTED"
+                  : "FAILED: " + e.getMessage();
+            }))
+        .collect(toList());
+    return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+        .thenApply(v -> {
+          Map<String, String> body = new LinkedHashMap<>();
+          for (int i = 0; i < submissions.size(); ++i) {
+            body.put(keyOf(i, submissions.get(i)), results.get(i).join());
+          }
+          return ResponseEntity.ok(body);
+        });
+  }
+
+  // one not signed has no tx hash, so it's keyed by its index in a request
+  protected static String keyOf(final int index, final Submission submission) {
+    return (null != submission.getTxHash()) ? submission.getTxHash().toString()
+        : "unsigned-" + index;
+  }
+
+  @ExceptionHandler(ShuttingDownException.class)
+  public ResponseEntity<String> onShuttingDown(ShuttingDownException e) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter))
+        .body(e.getMessage());
   }
 
 }
@@ -0,0 +1,39 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.controller;
+
+// java bean
+public class TransferRequest {
+
+  protected String recipient;
+
+  // in aer
+  protected String amount;
+
+  public String getRecipient() {
+    return recipient;
+  }
+
+  public void setRecipient(String recipient) {
+    this.recipient = recipient;
+  }
+
+  public String getAmount() {
+    return amount;
+  }
+
+  public void setAmount(String amount) {
+    this.amount = amount;
+  }
+
+  @Override
+  public String toString() {
+    return "TransferRequest{" +
+        "recipient=" + recipient +
+        ", amount=" + amount +
+        '}';
+  }
+
+}
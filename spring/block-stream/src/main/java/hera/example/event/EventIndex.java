@@ -0,0 +1,35 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.event;
+
+import hera.api.model.ContractAddress;
+import hera.api.model.EventFilter;
+import java.util.List;
+
+/**
+ * A local index of contract events fed by an event subscription and a historical backfill. It
+ * answers an {@link EventFilter} of an indexed contract without a node round trip.
+ */
+public interface EventIndex {
+
+  /**
+   * List events matching a filter in a block order. It's served locally if a contract is indexed
+   * and a range is covered, otherwise from a node. A range ending at 0 or a recent block count is
+   * counted from an indexed height, not a best height of a node.
+   *
+   * @param filter an event filter
+   * @return matching events
+   */
+  List<IndexedEvent> list(EventFilter filter);
+
+  /**
+   * Get the height up to which events of a contract are indexed.
+   *
+   * @param contractAddress a contract address
+   * @return an indexed height, 0 if not indexed or still backfilling
+   */
+  long getIndexedHeight(ContractAddress contractAddress);
+
+}
@@ -0,0 +1,84 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.event;
+
+import hera.api.model.BlockHash;
+import hera.api.model.ContractAddress;
+import hera.api.model.TxHash;
+
+/**
+ * A contract event with its arguments kept as a json array.
+ */
+public class IndexedEvent {
+
+  protected final ContractAddress contractAddress;
+
+  protected final String eventName;
+
+  protected final String jsonArgs;
+
+  protected final long blockNumber;
+
+  protected final int txIndex;
+
+  protected final int index;
+
+  protected final TxHash txHash;
+
+  protected final BlockHash blockHash;
+
+  public IndexedEvent(final ContractAddress contractAddress, final String eventName,
+      final String jsonArgs, final long blockNumber, final int txIndex, final int index,
+      final TxHash txHash, final BlockHash blockHash) {
+    this.contractAddress = contractAddress;
+    this.eventName = eventName;
+    this.jsonArgs = jsonArgs;
+    this.blockNumber = blockNumber;
+    this.txIndex = txIndex;
+    this.index = index;
+    this.txHash = txHash;
+    this.blockHash = blockHash;
+  }
+
+  public ContractAddress getContractAddress() {
+    return contractAddress;
+  }
+
+  public String getEventName() {
+    return eventName;
+  }
+
+  public String getJsonArgs() {
+    return jsonArgs;
+  }
+
+  public long getBlockNumber() {
+    return blockNumber;
+  }
+
+  public int getTxIndex() {
+    return txIndex;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public TxHash getTxHash() {
+    return txHash;
+  }
+
+  public BlockHash getBlockHash() {
+    return blockHash;
+  }
+
+  @Override
+  public String toString() {
+    return "IndexedEvent{contractAddress=" + contractAddress + ", eventName=" + eventName
+        + ", jsonArgs=" + jsonArgs + ", blockNumber=" + blockNumber + ", txIndex=" + txIndex
+        + ", index=" + index + ", txHash=" + txHash + "}";
+  }
+
+}
@@ -0,0 +1,568 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.event.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import hera.api.model.BlockHash;
+import hera.api.model.BytesValue;
+import hera.api.model.ContractAddress;
+import hera.api.model.TxHash;
+import hera.example.event.IndexedEvent;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Events of a contract in memory and in an append-only file. In memory, events are kept in a
+ * block order under keys of all, an event name, and an event name with its first argument, so
+ * that a filter is a range lookup on one of them. Arguments of each event are parsed once when
+ * it's added. At most a capacity of events is kept, and on exceeding it events of the lowest
+ * heights are evicted and a start height moves past them, so that a range below is passed to a
+ * node.
+ *
+ * <p>A record in a file is {@code [length][type][body][crc32]}. An event body is
+ * {@code [height][tx index][index][name][first arg][json args][tx hash][block hash]}, a
+ * watermark body is {@code [start height][indexed height]} and a drop body is
+ * {@code [height][canonical block hash]}, removing events of a replaced block. Reading stops at
+ * a torn record and a file is truncated there. A file with drops or evicted events is rewritten
+ * on open.
+ */
+class ContractEvents {
+
+  static final byte EVENT = 1;
+  static final byte WATERMARK = 2;
+  static final byte DROP = 3;
+
+  protected static final NavigableMap<Position, IndexedEvent> EMPTY =
+      Collections.unmodifiableNavigableMap(new ConcurrentSkipListMap<>());
+
+  protected final ContractAddress contractAddress;
+
+  protected final File file;
+
+  // maximum number of events kept
+  protected final int capacity;
+
+  // json args -> json of each argument, empty if not parsed
+  protected final Function<String, List<String>> parser;
+
+  protected final NavigableMap<Position, IndexedEvent> all = new ConcurrentSkipListMap<>();
+
+  protected final Map<String, NavigableMap<Position, IndexedEvent>> byName =
+      new ConcurrentHashMap<>();
+
+  // keyed by name + '\0' + json of a first argument
+  protected final Map<String, NavigableMap<Position, IndexedEvent>> byNameAndArg =
+      new ConcurrentHashMap<>();
+
+  // first argument of each event to find a key on removal, guarded by this
+  protected final Map<Position, String> firstArgs = new HashMap<>();
+
+  // json of each argument of an event
+  protected final Map<Position, List<String>> args = new ConcurrentHashMap<>();
+
+  // number of events kept, guarded by this
+  protected int size = 0;
+
+  // number of events evicted since open, guarded by this
+  protected long evicted = 0L;
+
+  // lowest height covered, 0 if never backfilled
+  protected volatile long startHeight = 0L;
+
+  // height served up to, 0 while catching up
+  protected volatile long indexedHeight = 0L;
+
+  // height of latest event delivered by a subscription
+  protected volatile long deliveredHeight = 0L;
+
+  // last watermark written, guarded by this
+  protected long storedHeight = 0L;
+
+  // true while a subscription and a backfill are in progress
+  protected final AtomicBoolean catchingUp = new AtomicBoolean(false);
+
+  // set on a subscription error during catching up
+  protected volatile boolean broken = false;
+
+  // guarded by this
+  protected OutputStream out;
+
+  ContractEvents(final ContractAddress contractAddress, final File file, final int capacity,
+      final Function<String, List<String>> parser) {
+    this.contractAddress = contractAddress;
+    this.file = file;
+    this.capacity = capacity;
+    this.parser = parser;
+  }
+
+  ContractAddress getContractAddress() {
+    return contractAddress;
+  }
+
+  long getStartHeight() {
+    return startHeight;
+  }
+
+  long getIndexedHeight() {
+    return indexedHeight;
+  }
+
+  long getDeliveredHeight() {
+    return deliveredHeight;
+  }
+
+  void delivered(final long height) {
+    if (height > deliveredHeight) {
+      deliveredHeight = height;
+    }
+  }
+
+  synchronized long getStoredHeight() {
+    return storedHeight;
+  }
+
+  /**
+   * Read a file and open it for appending.
+   *
+   * @throws IOException on a file error
+   */
+  synchronized void open() throws IOException {
+    int drops = 0;
+    if (file.exists()) {
+      long valid = 0L;
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+        final MappedByteBuffer buffer = raf.getChannel()
+            .map(MapMode.READ_ONLY, 0L, raf.length());
+        ByteBuffer body;
+        while (null != (body = next(buffer))) {
+          valid = buffer.position();
+          if (DROP == apply(body)) {
+            ++drops;
+          }
+        }
+        if (valid < raf.length()) {
+          System.err.println("Event index " + file + " is torn at " + valid + ", truncate");
+        }
+      }
+      truncate(valid);
+    }
+    if (0 < drops || 0L < evicted) {
+      rewrite();
+    }
+    out = new BufferedOutputStream(new FileOutputStream(file, true));
+  }
+
+  synchronized void close() {
+    if (null == out) {
+      return;
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      System.err.println("Closing event index " + file + " failed: " + e);
+    }
+    out = null;
+  }
+
+  /**
+   * Add an event if not added yet.
+   *
+   * @param event an event
+   * @param firstArg json of a first argument, empty if none
+   * @return true if added
+   */
+  synchronized boolean add(final IndexedEvent event, final String firstArg) {
+    // one below evicted ones is served by a node
+    if (event.getBlockNumber() < startHeight || !put(event, firstArg)) {
+      return false;
+    }
+    write(encodeEvent(event, firstArg));
+    return true;
+  }
+
+  /**
+   * Remove events of a height not in a canonical block.
+   *
+   * @param height a block height
+   * @param canonical a hash of a canonical block of the height
+   */
+  synchronized void drop(final long height, final BlockHash canonical) {
+    final List<Position> stale = new ArrayList<>();
+    for (final IndexedEvent event : atHeight(height)) {
+      if (!canonical.equals(event.getBlockHash())) {
+        stale.add(Position.of(event));
+      }
+    }
+    if (stale.isEmpty()) {
+      return;
+    }
+    stale.forEach(this::remove);
+    write(encodeDrop(height, canonical));
+  }
+
+  /**
+   * Store a progress of indexing and flush appended records.
+   *
+   * @param start a lowest height covered
+   * @param height a height indexed up to
+   */
+  synchronized void mark(final long start, final long height) {
+    // not below evicted ones
+    startHeight = Math.max(startHeight, start);
+    storedHeight = height;
+    write(encodeWatermark(start, height));
+    flush();
+  }
+
+  /**
+   * Start serving events up to a height.
+   *
+   * @param height an indexed height
+   */
+  synchronized void serve(final long height) {
+    indexedHeight = height;
+  }
+
+  /**
+   * Serve events up to a height if still serving from an expected height.
+   *
+   * @param expected a height served up to now
+   * @param height a new indexed height
+   * @return true if advanced
+   */
+  synchronized boolean advance(final long expected, final long height) {
+    if (0L == indexedHeight || expected != indexedHeight) {
+      return false;
+    }
+    indexedHeight = height;
+    return true;
+  }
+
+  /**
+   * Stop serving until caught up again.
+   */
+  synchronized void suspend() {
+    indexedHeight = 0L;
+  }
+
+  /**
+   * Select events of a key in a block order.
+   *
+   * @param eventName an event name, null for all
+   * @param firstArg json of a first argument, null for any
+   * @return events of a key
+   */
+  NavigableMap<Position, IndexedEvent> select(final String eventName, final String firstArg) {
+    NavigableMap<Position, IndexedEvent> selected;
+    if (null == eventName) {
+      selected = all;
+    } else if (null == firstArg) {
+      selected = byName.get(eventName);
+    } else {
+      selected = byNameAndArg.get(keyOf(eventName, firstArg));
+    }
+    return null != selected ? selected : EMPTY;
+  }
+
+  /**
+   * Get arguments of an event parsed on adding it.
+   *
+   * @param position a position of an event
+   * @return json of each argument, empty if none or not parsed
+   */
+  List<String> argsOf(final Position position) {
+    final List<String> parsed = args.get(position);
+    return null != parsed ? parsed : Collections.emptyList();
+  }
+
+  protected Iterable<IndexedEvent> atHeight(final long height) {
+    return new ArrayList<>(all.subMap(Position.first(height), true, Position.last(height), true)
+        .values());
+  }
+
+  // guarded by this
+  protected boolean put(final IndexedEvent event, final String firstArg) {
+    final Position position = Position.of(event);
+    final IndexedEvent existing = all.get(position);
+    if (null != existing) {
+      if (existing.getBlockHash().equals(event.getBlockHash())) {
+        return false;
+      }
+      // one of a replaced block
+      remove(position);
+    }
+    all.put(position, event);
+    ++size;
+    firstArgs.put(position, firstArg);
+    args.put(position, parser.apply(event.getJsonArgs()));
+    byName.computeIfAbsent(event.getEventName(), k -> new ConcurrentSkipListMap<>())
+        .put(position, event);
+    byNameAndArg.computeIfAbsent(keyOf(event.getEventName(), firstArg),
+        k -> new ConcurrentSkipListMap<>()).put(position, event);
+    if (size > capacity) {
+      evict();
+    }
+    return true;
+  }
+
+  // evict whole heights from the lowest, guarded by this
+  protected void evict() {
+    while (size > capacity) {
+      final long height = all.firstKey().height;
+      for (final IndexedEvent event : atHeight(height)) {
+        remove(Position.of(event));
+        ++evicted;
+      }
+      startHeight = Math.max(startHeight, height + 1);
+    }
+  }
+
+  // guarded by this
+  protected void remove(final Position position) {
+    final IndexedEvent event = all.remove(position);
+    if (null == event) {
+      return;
+    }
+    --size;
+    args.remove(position);
+    final String firstArg = firstArgs.remove(position);
+    final NavigableMap<Position, IndexedEvent> named = byName.get(event.getEventName());
+    if (null != named) {
+      named.remove(position);
+    }
+    final NavigableMap<Position, IndexedEvent> keyed =
+        byNameAndArg.get(keyOf(event.getEventName(), firstArg));
+    if (null != keyed) {
+      keyed.remove(position);
+    }
+  }
+
+  // apply a record body read from a file, guarded by this
+  protected byte apply(final ByteBuffer body) {
+    final byte type = body.get();
+    if (EVENT == type) {
+      final long height = body.getLong();
+      final int txIndex = body.getInt();
+      final int index = body.getInt();
+      final String name = getString(body);
+      final String firstArg = getString(body);
+      final String jsonArgs = getString(body);
+      final TxHash txHash = TxHash.of(BytesValue.of(getBytes(body)));
+      final BlockHash blockHash = BlockHash.of(BytesValue.of(getBytes(body)));
+      put(new IndexedEvent(contractAddress, name, jsonArgs, height, txIndex, index, txHash,
+          blockHash), firstArg);
+    } else if (WATERMARK == type) {
+      startHeight = Math.max(startHeight, body.getLong());
+      storedHeight = body.getLong();
+    } else if (DROP == type) {
+      final long height = body.getLong();
+      final BlockHash canonical = BlockHash.of(BytesValue.of(getBytes(body)));
+      for (final IndexedEvent event : atHeight(height)) {
+        if (!canonical.equals(event.getBlockHash())) {
+          remove(Position.of(event));
+        }
+      }
+    }
+    return type;
+  }
+
+  // write live events and a watermark only, guarded by this
+  protected void rewrite() throws IOException {
+    final File temp = new File(file.getPath() + ".tmp");
+    try (OutputStream rewritten = new BufferedOutputStream(new FileOutputStream(temp))) {
+      for (final Map.Entry<Position, IndexedEvent> entry : all.entrySet()) {
+        rewritten.write(encodeEvent(entry.getValue(), firstArgs.get(entry.getKey())));
+      }
+      rewritten.write(encodeWatermark(startHeight, storedHeight));
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  protected void truncate(final long length) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      if (length < raf.length()) {
+        raf.setLength(length);
+      }
+    }
+  }
+
+  // guarded by this
+  protected void write(final byte[] record) {
+    if (null == out) {
+      return;
+    }
+    try {
+      out.write(record);
+    } catch (IOException e) {
+      System.err.println("Writing event index " + file + " failed: " + e);
+    }
+  }
+
+  // guarded by this
+  protected void flush() {
+    if (null == out) {
+      return;
+    }
+    try {
+      out.flush();
+    } catch (IOException e) {
+      System.err.println("Flushing event index " + file + " failed: " + e);
+    }
+  }
+
+  protected static String keyOf(final String eventName, final String firstArg) {
+    return eventName + '\0' + firstArg;
+  }
+
+  protected static byte[] encodeEvent(final IndexedEvent event, final String firstArg) {
+    final byte[] name = event.getEventName().getBytes(UTF_8);
+    final byte[] arg = firstArg.getBytes(UTF_8);
+    final byte[] args = event.getJsonArgs().getBytes(UTF_8);
+    final byte[] txHash = event.getTxHash().getBytesValue().getValue();
+    final byte[] blockHash = event.getBlockHash().getBytesValue().getValue();
+    final ByteBuffer body = ByteBuffer.allocate(1 + Long.BYTES + 2 * Integer.BYTES
+        + 3 * Integer.BYTES + name.length + arg.length + args.length
+        + 2 * Short.BYTES + txHash.length + blockHash.length);
+    body.put(EVENT);
+    body.putLong(event.getBlockNumber());
+    body.putInt(event.getTxIndex());
+    body.putInt(event.getIndex());
+    body.putInt(name.length).put(name);
+    body.putInt(arg.length).put(arg);
+    body.putInt(args.length).put(args);
+    body.putShort((short) txHash.length).put(txHash);
+    body.putShort((short) blockHash.length).put(blockHash);
+    return frame(body.array());
+  }
+
+  protected static byte[] encodeWatermark(final long start, final long height) {
+    final ByteBuffer body = ByteBuffer.allocate(1 + 2 * Long.BYTES);
+    body.put(WATERMARK).putLong(start).putLong(height);
+    return frame(body.array());
+  }
+
+  protected static byte[] encodeDrop(final long height, final BlockHash canonical) {
+    final byte[] hash = canonical.getBytesValue().getValue();
+    final ByteBuffer body = ByteBuffer.allocate(1 + Long.BYTES + Short.BYTES + hash.length);
+    body.put(DROP).putLong(height).putShort((short) hash.length).put(hash);
+    return frame(body.array());
+  }
+
+  protected static byte[] frame(final byte[] body) {
+    final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + body.length + Integer.BYTES);
+    buffer.putInt(body.length).put(body);
+    final CRC32 crc = new CRC32();
+    crc.update(body, 0, body.length);
+    buffer.putInt((int) crc.getValue());
+    return buffer.array();
+  }
+
+  // null on end or a torn record
+  protected static ByteBuffer next(final ByteBuffer buffer) {
+    if (buffer.remaining() < Integer.BYTES) {
+      return null;
+    }
+    final int length = buffer.getInt();
+    if (length <= 0 || buffer.remaining() < length + Integer.BYTES) {
+      return null;
+    }
+    final byte[] body = new byte[length];
+    buffer.get(body);
+    final CRC32 crc = new CRC32();
+    crc.update(body, 0, length);
+    if ((int) crc.getValue() != buffer.getInt()) {
+      return null;
+    }
+    return ByteBuffer.wrap(body);
+  }
+
+  protected static String getString(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  protected static byte[] getBytes(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getShort()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * A position of an event in a chain.
+   */
+  static class Position implements Comparable<Position> {
+
+    protected final long height;
+    protected final int txIndex;
+    protected final int index;
+
+    Position(final long height, final int txIndex, final int index) {
+      this.height = height;
+      this.txIndex = txIndex;
+      this.index = index;
+    }
+
+    static Position of(final IndexedEvent event) {
+      return new Position(event.getBlockNumber(), event.getTxIndex(), event.getIndex());
+    }
+
+    static Position first(final long height) {
+      return new Position(height, Integer.MIN_VALUE, Integer.MIN_VALUE);
+    }
+
+    static Position last(final long height) {
+      return new Position(height, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int compareTo(final Position other) {
+      int compared = Long.compare(height, other.height);
+      if (0 == compared) {
+        compared = Integer.compare(txIndex, other.txIndex);
+      }
+      if (0 == compared) {
+        compared = Integer.compare(index, other.index);
+      }
+      return compared;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof Position)) {
+        return false;
+      }
+      return 0 == compareTo((Position) obj);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * Long.hashCode(height) + txIndex) + index;
+    }
+  }
+
+}
@@ -0,0 +1,405 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.event.internal;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hera.api.model.BlockHash;
+import hera.api.model.ContractAddress;
+import hera.api.model.Event;
+import hera.api.model.EventFilter;
+import hera.api.model.StreamObserver;
+import hera.api.model.Subscription;
+import hera.client.AergoClient;
+import hera.example.event.EventIndex;
+import hera.example.event.IndexedEvent;
+import hera.example.event.internal.ContractEvents.Position;
+import hera.example.routing.AergoClientPool;
+import hera.example.stream.BlockListener;
+import hera.example.stream.BlockStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * An event index of configured contracts. Catching up a contract subscribes its events first and
+ * then backfills blocks from a stored watermark up to a best height with {@code listEvents}, so
+ * that no block falls between them. A duplicated event is ignored. After catching up, a watermark
+ * follows a block stream and events of a replaced block are dropped on its replacement.
+ *
+ * <p>A block streamed may arrive before its events do, so a watermark moves past it only once an
+ * event of a later block is delivered or a {@code listEvents} call of a node having the block
+ * confirms it.
+ */
+@Component
+class EventIndexImpl implements EventIndex, BlockListener {
+
+  protected static final String SUFFIX = ".events";
+
+  // comma separated contract addresses, empty to disable
+  @Value("${aergo.events.contracts:}")
+  protected String contracts;
+
+  @Value("${aergo.events.directory:events}")
+  protected String directory;
+
+  // number of recent blocks indexed on first start
+  @Value("${aergo.events.backfill.blocks:100000}")
+  protected long backfillBlocks;
+
+  // number of blocks of a listEvents call
+  @Value("${aergo.events.backfill.window:1000}")
+  protected long backfillWindow;
+
+  // number of blocks scanned again below a stored watermark, for events not flushed on a crash
+  @Value("${aergo.events.backfill.overlap:16}")
+  protected long backfillOverlap;
+
+  // maximum number of events of a contract kept in memory, lowest heights evicted first
+  @Value("${aergo.events.capacity:1000000}")
+  protected int capacity;
+
+  // delay of catching up again after a failure (ms)
+  @Value("${aergo.events.retry-interval:1000}")
+  protected long retryInterval;
+
+  @Autowired
+  protected AergoClient aergoClient;
+
+  @Autowired
+  protected AergoClientPool aergoClientPool;
+
+  @Autowired
+  protected BlockStream blockStream;
+
+  @Autowired
+  protected ObjectMapper objectMapper;
+
+  @Autowired
+  protected MeterRegistry meterRegistry;
+
+  // encoded contract address -> events
+  protected final Map<String, ContractEvents> indexed = new ConcurrentHashMap<>();
+
+  protected final Map<String, Subscription<Event>> subscriptions = new ConcurrentHashMap<>();
+
+  protected ScheduledExecutorService indexer;
+
+  protected Counter localQueries;
+
+  protected Counter nodeQueries;
+
+  @PostConstruct
+  protected void init() throws IOException {
+    localQueries = Counter.builder("aergo.events.query").tag("source", "local")
+        .description("Event queries answered by a local index")
+        .register(meterRegistry);
+    nodeQueries = Counter.builder("aergo.events.query").tag("source", "node")
+        .description("Event queries passed to a node")
+        .register(meterRegistry);
+
+    final List<String> addresses = new ArrayList<>();
+    for (final String address : contracts.split(",")) {
+      if (!address.trim().isEmpty()) {
+        addresses.add(address.trim());
+      }
+    }
+    if (addresses.isEmpty()) {
+      return;
+    }
+    final File dir = new File(directory);
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot make event index directory " + dir.getAbsolutePath());
+    }
+
+    indexer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "event-indexer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    for (final String address : addresses) {
+      final ContractEvents events = new ContractEvents(ContractAddress.of(address),
+          new File(dir, address + SUFFIX), capacity, this::parseArgs);
+      events.open();
+      indexed.put(address, events);
+      catchUpLater(events, 0L);
+    }
+    blockStream.addListener(this);
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    if (null != indexer) {
+      indexer.shutdownNow();
+    }
+    subscriptions.values().forEach(Subscription::unsubscribe);
+    indexed.values().forEach(ContractEvents::close);
+  }
+
+  @Override
+  public List<IndexedEvent> list(final EventFilter filter) {
+    final ContractEvents events = indexed.get(filter.getContractAddress().getEncoded());
+    final long indexedHeight = (null != events) ? events.getIndexedHeight() : 0L;
+    if (0L == indexedHeight) {
+      return listFromNode(filter);
+    }
+
+    final long from;
+    final long to;
+    if (0 < filter.getRecentBlockCount()) {
+      to = indexedHeight;
+      from = Math.max(1L, to - filter.getRecentBlockCount() + 1);
+    } else {
+      to = (0L == filter.getToBlockNumber()) ? indexedHeight : filter.getToBlockNumber();
+      from = filter.getFromBlockNumber();
+    }
+    if (from < events.getStartHeight() || to > indexedHeight) {
+      return listFromNode(filter);
+    }
+
+    // a key covers an event name and a first argument, others are compared one by one
+    final String eventName = emptyToNull(filter.getEventName());
+    final List<Object> args = (null != filter.getArgs()) ? filter.getArgs()
+        : Collections.emptyList();
+    final boolean keyedByArg = null != eventName && !args.isEmpty();
+    final List<String> jsonArgs = new ArrayList<>(args.size());
+    for (final Object arg : args) {
+      jsonArgs.add(toJson(arg));
+    }
+    final List<IndexedEvent> matched = new ArrayList<>();
+    for (final Map.Entry<Position, IndexedEvent> entry : events
+        .select(eventName, keyedByArg ? jsonArgs.get(0) : null)
+        .subMap(Position.first(from), true, Position.last(to), true).entrySet()) {
+      if (matches(entry.getValue(), eventName, jsonArgs, keyedByArg ? 1 : 0,
+          () -> events.argsOf(entry.getKey()))) {
+        matched.add(entry.getValue());
+      }
+    }
+    localQueries.increment();
+    return matched;
+  }
+
+  @Override
+  public long getIndexedHeight(final ContractAddress contractAddress) {
+    final ContractEvents events = indexed.get(contractAddress.getEncoded());
+    return (null != events) ? events.getIndexedHeight() : 0L;
+  }
+
+  @Override
+  public void onBlock(final long height, final BlockHash hash) {
+    for (final ContractEvents events : indexed.values()) {
+      events.drop(height, hash);
+      if (0L != events.getIndexedHeight()) {
+        confirmLater(events, height);
+      }
+    }
+  }
+
+  protected void confirmLater(final ContractEvents events, final long height) {
+    try {
+      indexer.execute(() -> confirm(events, height));
+    } catch (Exception e) {
+      // shutting down
+    }
+  }
+
+  // serve up to a height once events of blocks after a served height are known to be added
+  protected void confirm(final ContractEvents events, final long height) {
+    final long served = events.getIndexedHeight();
+    if (0L == served || height <= served) {
+      return;
+    }
+    try {
+      // an event stream is in a block order, a later event means earlier ones are delivered
+      if (events.getDeliveredHeight() <= height) {
+        final EventFilter filter = EventFilter.newBuilder(events.getContractAddress())
+            .fromBlockNumber(served + 1)
+            .toBlockNumber(height)
+            .build();
+        for (final Event event : aergoClientPool.newRoutingClient(height)
+            .getContractOperation().listEvents(filter)) {
+          add(events, event);
+        }
+      }
+      events.mark(events.getStartHeight(), height);
+      events.advance(served, height);
+    } catch (Exception e) {
+      // keep a served height, a next block confirms them again
+      System.err.println("Confirming events of " + events.getContractAddress() + " up to "
+          + height + " failed: " + e);
+    }
+  }
+
+  protected void catchUp(final ContractEvents events) {
+    final ContractAddress contractAddress = events.getContractAddress();
+    events.broken = false;
+    try {
+      subscribe(events);
+      final long best = aergoClient.getBlockchainOperation().getBlockchainStatus()
+          .getBestHeight();
+      final long stored = events.getStoredHeight();
+      final long start = (0L != events.getStartHeight()) ? events.getStartHeight()
+          : Math.max(1L, best - backfillBlocks + 1);
+      long from = (0L != stored) ? Math.max(start, stored - backfillOverlap + 1) : start;
+      // a node behind best would miss events of blocks it doesn't have
+      final AergoClient client = aergoClientPool.newRoutingClient(best);
+      while (from <= best) {
+        final long to = Math.min(from + backfillWindow - 1, best);
+        final EventFilter filter = EventFilter.newBuilder(contractAddress)
+            .fromBlockNumber(from)
+            .toBlockNumber(to)
+            .build();
+        for (final Event event : client.getContractOperation().listEvents(filter)) {
+          add(events, event);
+        }
+        events.mark(start, to);
+        from = to + 1;
+      }
+      // blocks after best are covered by a subscription and confirmed on a next block
+      events.mark(start, best);
+      events.serve(best);
+      System.err.println("Events of " + contractAddress + " indexed from " + start + " to "
+          + best);
+    } catch (Exception e) {
+      System.err.println("Indexing events of " + contractAddress + " failed: " + e);
+      events.broken = true;
+    } finally {
+      events.catchingUp.set(false);
+    }
+    if (events.broken) {
+      catchUpLater(events, retryInterval);
+    }
+  }
+
+  protected void catchUpLater(final ContractEvents events, final long delay) {
+    events.suspend();
+    if (events.catchingUp.compareAndSet(false, true)) {
+      try {
+        indexer.schedule(() -> catchUp(events), delay, TimeUnit.MILLISECONDS);
+      } catch (Exception e) {
+        // shutting down
+        events.catchingUp.set(false);
+      }
+    } else {
+      events.broken = true;
+    }
+  }
+
+  protected void subscribe(final ContractEvents events) {
+    final String address = events.getContractAddress().getEncoded();
+    final Subscription<Event> previous = subscriptions.remove(address);
+    if (null != previous) {
+      previous.unsubscribe();
+    }
+    final EventFilter filter = EventFilter.newBuilder(events.getContractAddress()).build();
+    subscriptions.put(address, aergoClient.getContractOperation()
+        .subscribeEvent(filter, new StreamObserver<Event>() {
+          @Override
+          public void onNext(Event value) {
+            add(events, value);
+            events.delivered(value.getBlockNumber());
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            System.err.println("Event subscription of " + address + " failed: " + t);
+            catchUpLater(events, retryInterval);
+          }
+
+          @Override
+          public void onCompleted() {
+          }
+        }));
+  }
+
+  protected void add(final ContractEvents events, final Event event) {
+    final List<Object> args = argsOf(event);
+    events.add(toIndexed(event), args.isEmpty() ? "" : toJson(args.get(0)));
+  }
+
+  protected List<IndexedEvent> listFromNode(final EventFilter filter) {
+    final List<IndexedEvent> listed = new ArrayList<>();
+    for (final Event event : aergoClient.getContractOperation().listEvents(filter)) {
+      listed.add(toIndexed(event));
+    }
+    nodeQueries.increment();
+    return listed;
+  }
+
+  protected IndexedEvent toIndexed(final Event event) {
+    return new IndexedEvent(event.getFrom(), event.getEventName(), toJson(argsOf(event)),
+        event.getBlockNumber(), event.getIndexInBlock(), event.getIndex(), event.getTxHash(),
+        event.getBlockHash());
+  }
+
+  // compare args from an offset by their json, as a node does
+  protected boolean matches(final IndexedEvent event, final String eventName,
+      final List<String> jsonArgs, final int offset, final Supplier<List<String>> parsed) {
+    if (null != eventName && !eventName.equals(event.getEventName())) {
+      return false;
+    }
+    if (jsonArgs.size() <= offset) {
+      return true;
+    }
+    final List<String> eventArgs = parsed.get();
+    if (eventArgs.size() < jsonArgs.size()) {
+      return false;
+    }
+    for (int i = offset; i < jsonArgs.size(); ++i) {
+      if (!jsonArgs.get(i).equals(eventArgs.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // split json args into json of each argument once on indexing
+  protected List<String> parseArgs(final String jsonArgs) {
+    final List<?> eventArgs;
+    try {
+      eventArgs = objectMapper.readValue(jsonArgs, List.class);
+    } catch (IOException e) {
+      return Collections.emptyList();
+    }
+    final List<String> parsed = new ArrayList<>(eventArgs.size());
+    for (final Object arg : eventArgs) {
+      parsed.add(toJson(arg));
+    }
+    return parsed;
+  }
+
+  protected String toJson(final Object value) {
+    try {
+      return objectMapper.writeValueAsString(value);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  protected static List<Object> argsOf(final Event event) {
+    return (null != event.getArgs()) ? event.getArgs() : Collections.emptyList();
+  }
+
+  protected static String emptyToNull(final String value) {
+    return (null == value || value.isEmpty()) ? null : value;
+  }
+
+}
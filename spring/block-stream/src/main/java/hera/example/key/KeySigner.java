@@ -0,0 +1,126 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.key;
+
+import hera.api.model.AccountAddress;
+import hera.api.model.BytesValue;
+import hera.api.model.Hash;
+import hera.api.model.Signature;
+import hera.key.AergoKey;
+import java.math.BigInteger;
+import java.security.interfaces.ECPrivateKey;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.bouncycastle.math.ec.FixedPointUtil;
+
+/**
+ * Signs hashes and messages of a key like {@link AergoKey#signMessage(Hash)} and
+ * {@link AergoKey#signMessage(BytesValue)}, with less work for each sign. An ECDSA signer, its
+ * deterministic k calculator and a digest are kept per thread and initialized with a private key
+ * once, where AergoKey makes new ones for each sign. A sign multiplies the curve generator only,
+ * so a fixed-base comb table of it is precomputed once on loading rather than on a first sign, and
+ * shared by keys.
+ *
+ * <p>A signature is a DER encoded (r, s) with a low s, and k is deterministic by RFC 6979.
+ */
+public class KeySigner {
+
+  protected static final X9ECParameters CURVE = CustomNamedCurves.getByName("secp256k1");
+
+  protected static final ECDomainParameters DOMAIN = new ECDomainParameters(CURVE.getCurve(),
+      CURVE.getG(), CURVE.getN(), CURVE.getH());
+
+  protected static final BigInteger HALF_N = CURVE.getN().shiftRight(1);
+
+  static {
+    // cached on a generator point, which a signer of a domain multiplies by a comb
+    FixedPointUtil.precompute(DOMAIN.getG());
+  }
+
+  protected final AccountAddress address;
+
+  protected final ECPrivateKeyParameters privateKey;
+
+  // neither a signer nor a digest is thread-safe
+  protected final ThreadLocal<ECDSASigner> signers;
+
+  protected final ThreadLocal<SHA256Digest> digests = ThreadLocal.withInitial(SHA256Digest::new);
+
+  /**
+   * Create a signer of a key.
+   *
+   * @param key a key to sign with
+   */
+  public KeySigner(final AergoKey key) {
+    this.address = key.getAddress();
+    this.privateKey = new ECPrivateKeyParameters(((ECPrivateKey) key.getPrivateKey()).getS(),
+        DOMAIN);
+    this.signers = ThreadLocal.withInitial(() -> {
+      final ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+      signer.init(true, privateKey);
+      return signer;
+    });
+  }
+
+  public AccountAddress getAddress() {
+    return address;
+  }
+
+  /**
+   * Sign a hash as it is.
+   *
+   * @param hash a hash to sign
+   * @return a signature
+   */
+  public Signature sign(final Hash hash) {
+    return sign(hash.getBytesValue().getValue());
+  }
+
+  /**
+   * Sign a sha256 hash of a message.
+   *
+   * @param message a message to sign
+   * @return a signature
+   */
+  public Signature signMessage(final BytesValue message) {
+    final SHA256Digest digest = digests.get();
+    final byte[] raw = message.getValue();
+    digest.update(raw, 0, raw.length);
+    final byte[] hash = new byte[digest.getDigestSize()];
+    digest.doFinal(hash, 0);
+    return sign(hash);
+  }
+
+  protected Signature sign(final byte[] hash) {
+    final BigInteger[] components = signers.get().generateSignature(hash);
+    // a node takes a low s only
+    final BigInteger s = (components[1].compareTo(HALF_N) > 0)
+        ? DOMAIN.getN().subtract(components[1]) : components[1];
+    return Signature.of(BytesValue.of(encode(components[0], s)));
+  }
+
+  // DER sequence of two integers, shorter than 128 bytes for a 256 bit curve
+  protected static byte[] encode(final BigInteger r, final BigInteger s) {
+    final byte[] rBytes = r.toByteArray();
+    final byte[] sBytes = s.toByteArray();
+    final int length = 4 + rBytes.length + sBytes.length;
+    final byte[] encoded = new byte[2 + length];
+    encoded[0] = 0x30;
+    encoded[1] = (byte) length;
+    encoded[2] = 0x02;
+    encoded[3] = (byte) rBytes.length;
+    System.arraycopy(rBytes, 0, encoded, 4, rBytes.length);
+    encoded[4 + rBytes.length] = 0x02;
+    encoded[5 + rBytes.length] = (byte) sBytes.length;
+    System.arraycopy(sBytes, 0, encoded, 6 + rBytes.length, sBytes.length);
+    return encoded;
+  }
+
+}
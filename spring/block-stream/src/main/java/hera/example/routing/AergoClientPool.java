@@ -0,0 +1,241 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.routing;
+
+import hera.api.model.BlockMetadata;
+import hera.api.model.BlockchainStatus;
+import hera.api.model.StreamObserver;
+import hera.api.model.Subscription;
+import hera.client.AergoClient;
+import java.io.Closeable;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of clients spanning several endpoints. Read calls are routed to reader endpoints
+ * (followers) and calls making a transaction to writer endpoints (near block producers). In each
+ * group, a call goes to a healthy endpoint with lower average latency and a read call fails over
+ * to another endpoint. A best height of each endpoint follows its own block metadata stream.
+ */
+public class AergoClientPool implements Closeable {
+
+  protected final Map<String, Endpoint> endpoints;
+
+  protected final List<Endpoint> readers;
+
+  protected final List<Endpoint> writers;
+
+  protected final boolean readYourWrites;
+
+  protected final ScheduledExecutorService healthChecker;
+
+  /**
+   * Create a pool.
+   *
+   * @param readerAddresses endpoints for read calls in {hostname}:{port}
+   * @param writerAddresses endpoints for calls making a transaction in {hostname}:{port}
+   * @param channels a number of channels for each endpoint
+   * @param timeoutMillis a timeout of each request
+   * @param maxFailures a number of consecutive failures to treat endpoint as unhealthy
+   * @param healthCheckInterval an interval of health check in milliseconds
+   * @param readYourWrites if true, a read of a client made with a height goes only to an endpoint
+   *     which has seen a block of the height
+   */
+  public AergoClientPool(final List<String> readerAddresses, final List<String> writerAddresses,
+      final int channels, final long timeoutMillis, final int maxFailures,
+      final long healthCheckInterval, final boolean readYourWrites) {
+    if (readerAddresses.isEmpty() || writerAddresses.isEmpty()) {
+      throw new IllegalArgumentException("Both reader and writer endpoints are required");
+    }
+    // an address in both groups shares channels
+    final Map<String, Endpoint> created = new LinkedHashMap<>();
+    final List<Endpoint> readerGroup = new ArrayList<>();
+    for (final String address : readerAddresses) {
+      readerGroup.add(created.computeIfAbsent(address,
+          k -> new Endpoint(k, channels, maxFailures, timeoutMillis)));
+    }
+    final List<Endpoint> writerGroup = new ArrayList<>();
+    for (final String address : writerAddresses) {
+      writerGroup.add(created.computeIfAbsent(address,
+          k -> new Endpoint(k, channels, maxFailures, timeoutMillis)));
+    }
+    this.endpoints = Collections.unmodifiableMap(created);
+    this.readers = Collections.unmodifiableList(readerGroup);
+    this.writers = Collections.unmodifiableList(writerGroup);
+    this.readYourWrites = readYourWrites;
+    this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "client-pool-health-checker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.healthChecker.scheduleWithFixedDelay(this::checkHealth, 0L, healthCheckInterval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Make a client routing each call over this pool.
+   *
+   * @return a routing client
+   */
+  public AergoClient newRoutingClient() {
+    return (AergoClient) Proxy.newProxyInstance(AergoClient.class.getClassLoader(),
+        new Class<?>[] {AergoClient.class}, new RoutingInvocationHandler(this, 0L, true));
+  }
+
+  /**
+   * Make a client routing each read to an endpoint which has seen a block of a height, like a
+   * block including a caller's own write. It falls back to writers if no reader has caught up.
+   * Closing it doesn't close this pool.
+   *
+   * @param minHeight a block height to be seen, 0 for any
+   * @return a routing client
+   */
+  public AergoClient newRoutingClient(final long minHeight) {
+    return (AergoClient) Proxy.newProxyInstance(AergoClient.class.getClassLoader(),
+        new Class<?>[] {AergoClient.class},
+        new RoutingInvocationHandler(this, readYourWrites ? minHeight : 0L, false));
+  }
+
+  public List<String> getHealthyEndpoints() {
+    final List<String> healthy = new ArrayList<>();
+    for (final Endpoint endpoint : endpoints.values()) {
+      if (endpoint.isHealthy()) {
+        healthy.add(endpoint.getAddress());
+      }
+    }
+    return healthy;
+  }
+
+  @Override
+  public void close() {
+    healthChecker.shutdownNow();
+    for (final Endpoint endpoint : endpoints.values()) {
+      final Subscription<BlockMetadata> heights = endpoint.heightSubscription;
+      if (null != heights) {
+        heights.unsubscribe();
+      }
+      endpoint.close();
+    }
+  }
+
+  /**
+   * Select an endpoint for a read call. It falls back to writers if no reader has seen a block of
+   * a height.
+   *
+   * @param excluded an endpoint to exclude, nullable
+   * @param minHeight a block height to be seen, 0 for any
+   * @return an endpoint
+   */
+  Endpoint selectReader(final Endpoint excluded, final long minHeight) {
+    final List<Endpoint> candidates = new ArrayList<>(readers.size());
+    for (final Endpoint endpoint : readers) {
+      if (endpoint.isHealthy() && endpoint != excluded && endpoint.getBestHeight() >= minHeight) {
+        candidates.add(endpoint);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return select((0L < minHeight) ? writers : readers, excluded);
+    }
+    return pickOfTwo(candidates);
+  }
+
+  /**
+   * Select an endpoint for a call making a transaction.
+   *
+   * @param excluded an endpoint to exclude, nullable
+   * @return an endpoint
+   */
+  Endpoint selectWriter(final Endpoint excluded) {
+    return select(writers, excluded);
+  }
+
+  protected Endpoint select(final Collection<Endpoint> group, final Endpoint excluded) {
+    final List<Endpoint> candidates = new ArrayList<>(group.size());
+    for (final Endpoint endpoint : group) {
+      if (endpoint.isHealthy() && endpoint != excluded) {
+        candidates.add(endpoint);
+      }
+    }
+    if (candidates.isEmpty()) {
+      // try anything rather than failing fast
+      for (final Endpoint endpoint : group) {
+        if (endpoint != excluded) {
+          candidates.add(endpoint);
+        }
+      }
+      if (candidates.isEmpty()) {
+        return null != excluded ? excluded : group.iterator().next();
+      }
+    }
+    return pickOfTwo(candidates);
+  }
+
+  // picks the less latent of two random endpoints so that a slightly slower endpoint still gets
+  // traffic and its latency is kept updated
+  protected Endpoint pickOfTwo(final List<Endpoint> candidates) {
+    if (1 == candidates.size()) {
+      return candidates.get(0);
+    }
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final Endpoint first = candidates.get(random.nextInt(candidates.size()));
+    Endpoint second = candidates.get(random.nextInt(candidates.size() - 1));
+    if (second == first) {
+      second = candidates.get(candidates.size() - 1);
+    }
+    return first.getLatencyMillis() <= second.getLatencyMillis() ? first : second;
+  }
+
+  protected void checkHealth() {
+    for (final Endpoint endpoint : endpoints.values()) {
+      final long start = System.nanoTime();
+      try {
+        final BlockchainStatus status = endpoint.next().getBlockchainOperation()
+            .getBlockchainStatus();
+        endpoint.onSuccess(System.nanoTime() - start);
+        if (null == endpoint.heightSubscription) {
+          // a height is polled only until its stream is up
+          endpoint.setBestHeight(status.getBestHeight());
+          watchHeight(endpoint);
+        }
+      } catch (Exception e) {
+        endpoint.onFailure();
+        System.err.println("Health check of " + endpoint.getAddress() + " failed: " + e);
+      }
+    }
+  }
+
+  // keep a best height of an endpoint by its block metadata stream, resubscribed on a health
+  // check after an error
+  protected void watchHeight(final Endpoint endpoint) {
+    endpoint.heightSubscription = endpoint.next().getBlockOperation()
+        .subscribeBlockMetadata(new StreamObserver<BlockMetadata>() {
+          @Override
+          public void onNext(BlockMetadata value) {
+            endpoint.setBestHeight(value.getBlockHeader().getBlockNumber());
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            System.err.println("Block stream of " + endpoint.getAddress() + " failed: " + t);
+            endpoint.heightSubscription = null;
+          }
+
+          @Override
+          public void onCompleted() {
+            endpoint.heightSubscription = null;
+          }
+        });
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.routing;
+
+import hera.api.model.BlockMetadata;
+import hera.api.model.Subscription;
+import hera.client.AergoClient;
+import hera.client.AergoClientBuilder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A node endpoint with several channels and its health.
+ */
+class Endpoint {
+
+  // weight of a new sample in latency average
+  protected static final double ALPHA = 0.2;
+
+  protected final String address;
+
+  protected final AergoClient[] clients;
+
+  protected final AtomicInteger cursor = new AtomicInteger(0);
+
+  protected final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+
+  protected final int maxFailures;
+
+  protected volatile double latencyMillis = 0.0;
+
+  protected volatile boolean healthy = true;
+
+  // best height of latest block streamed, polled by a health check while not streaming
+  protected volatile long bestHeight = 0L;
+
+  // block metadata stream updating a best height, null if not streaming
+  protected volatile Subscription<BlockMetadata> heightSubscription;
+
+  Endpoint(final String address, final int channels, final int maxFailures,
+      final long timeoutMillis) {
+    this.address = address;
+    this.maxFailures = maxFailures;
+    this.clients = new AergoClient[channels];
+    for (int i = 0; i < channels; ++i) {
+      clients[i] = new AergoClientBuilder()
+          .withEndpoint(address)
+          .withNonBlockingConnect()
+          .withTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+          .withPlainText()
+          .build();
+    }
+  }
+
+  String getAddress() {
+    return address;
+  }
+
+  /**
+   * Get a client of next channel.
+   *
+   * @return a client
+   */
+  AergoClient next() {
+    return clients[Math.floorMod(cursor.getAndIncrement(), clients.length)];
+  }
+
+  boolean isHealthy() {
+    return healthy;
+  }
+
+  double getLatencyMillis() {
+    return latencyMillis;
+  }
+
+  long getBestHeight() {
+    return bestHeight;
+  }
+
+  void setBestHeight(final long bestHeight) {
+    this.bestHeight = bestHeight;
+  }
+
+  void onSuccess(final long elapsedNanos) {
+    final double sample = elapsedNanos / 1_000_000.0;
+    final double previous = latencyMillis;
+    latencyMillis = (0.0 == previous) ? sample : previous + ALPHA * (sample - previous);
+    consecutiveFailures.set(0);
+    healthy = true;
+  }
+
+  void onFailure() {
+    if (consecutiveFailures.incrementAndGet() >= maxFailures) {
+      healthy = false;
+    }
+  }
+
+  void close() {
+    for (final AergoClient client : clients) {
+      try {
+        client.close();
+      } catch (Exception e) {
+        System.err.println("Closing client of " + address + " failed: " + e);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Endpoint{address=%s, healthy=%s, latency=%.2fms, height=%d}", address,
+        healthy, latencyMillis, bestHeight);
+  }
+
+}
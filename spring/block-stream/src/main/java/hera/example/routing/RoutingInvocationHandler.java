@@ -0,0 +1,176 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.routing;
+
+import hera.client.AergoClient;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Routes {@link AergoClient} calls over {@link AergoClientPool}. Calls in an allow-list of reads
+ * go to readers and the others to writers, since a write retried on another node may submit the
+ * same signed transaction twice. An operation returned by a client is also a proxy, so that
+ * each operation call is routed on its own.
+ */
+class RoutingInvocationHandler implements InvocationHandler {
+
+  // calls not changing a node state, any other one goes to writers and is never retried
+  protected static final Set<String> READS = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList(
+          // account
+          "getState", "getNameOwner", "getStakingInfo", "listElected", "getVotesOf",
+          // blockchain
+          "getChainIdHash", "getBlockchainStatus", "getChainInfo", "getChainStats", "listPeers",
+          "listPeerMetrics", "getServerInfo", "getNodeStatus", "getConsensusInfo",
+          // block
+          "getBlockMetadata", "listBlockMetadatas", "getBlock", "subscribeBlockMetadata",
+          "subscribeBlock",
+          // transaction
+          "getTransaction", "getTxReceipt",
+          // contract
+          "getReceipt", "getContractTxReceipt", "getContractInterface", "query", "listEvents",
+          "subscribeEvent")));
+
+  protected final AergoClientPool pool;
+
+  // block height a read endpoint should have seen, 0 for any
+  protected final long minHeight;
+
+  // whether closing a client closes a pool
+  protected final boolean owner;
+
+  // operation getter -> routing operation proxy
+  protected final Map<Method, Object> operations = new ConcurrentHashMap<>();
+
+  RoutingInvocationHandler(final AergoClientPool pool, final long minHeight,
+      final boolean owner) {
+    this.pool = pool;
+    this.minHeight = minHeight;
+    this.owner = owner;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (Object.class.equals(method.getDeclaringClass())) {
+      return invokeObjectMethod(proxy, method, args);
+    }
+    if ("close".equals(method.getName())) {
+      if (owner) {
+        pool.close();
+      }
+      return null;
+    }
+    if (method.getName().startsWith("get") && method.getName().endsWith("Operation")
+        && (null == args || 0 == args.length)) {
+      return operations.computeIfAbsent(method, this::newOperationProxy);
+    }
+    return invokeRouted(method, method, args);
+  }
+
+  protected Object newOperationProxy(final Method getter) {
+    final Class<?> type = getter.getReturnType();
+    return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+        (proxy, method, args) -> {
+          if (Object.class.equals(method.getDeclaringClass())) {
+            return invokeObjectMethod(proxy, method, args);
+          }
+          return invokeRouted(getter, method, args);
+        });
+  }
+
+  /**
+   * Invoke a method on a selected endpoint. A read call failed by transport is retried once on
+   * another endpoint.
+   *
+   * @param getter an operation getter of a client, or a client method itself
+   * @param method a method to invoke
+   * @param args arguments
+   * @return a result
+   * @throws Throwable an exception thrown by a method
+   */
+  protected Object invokeRouted(final Method getter, final Method method, final Object[] args)
+      throws Throwable {
+    final boolean read = isRead(method);
+    final Endpoint endpoint = read ? pool.selectReader(null, minHeight)
+        : pool.selectWriter(null);
+    try {
+      return invokeOn(endpoint, getter, method, args);
+    } catch (Throwable e) {
+      // a subscription is retried by its owner
+      if (method.getName().startsWith("subscribe") || !read || !isTransportFailure(e)) {
+        throw e;
+      }
+      final Endpoint another = pool.selectReader(endpoint, minHeight);
+      if (another == endpoint) {
+        throw e;
+      }
+      return invokeOn(another, getter, method, args);
+    }
+  }
+
+  protected Object invokeOn(final Endpoint endpoint, final Method getter, final Method method,
+      final Object[] args) throws Throwable {
+    final AergoClient client = endpoint.next();
+    final Object target = (getter == method) ? client : getter.invoke(client);
+    final long start = System.nanoTime();
+    try {
+      final Object result = method.invoke(target, args);
+      endpoint.onSuccess(System.nanoTime() - start);
+      return result;
+    } catch (InvocationTargetException e) {
+      if (isTransportFailure(e.getCause())) {
+        endpoint.onFailure();
+      } else {
+        // node responded, it's an error of a request itself
+        endpoint.onSuccess(System.nanoTime() - start);
+      }
+      throw e.getCause();
+    }
+  }
+
+  // heraj wraps grpc errors, so find a grpc status in a cause chain
+  protected static boolean isTransportFailure(final Throwable e) {
+    Throwable cause = e;
+    for (int depth = 0; null != cause && depth < 8; ++depth) {
+      if (cause instanceof ConnectException || cause instanceof TimeoutException) {
+        return true;
+      }
+      final String message = String.valueOf(cause.getMessage());
+      if (cause.getClass().getName().startsWith("io.grpc.Status")
+          && (message.startsWith("UNAVAILABLE") || message.startsWith("DEADLINE_EXCEEDED"))) {
+        return true;
+      }
+      cause = cause.getCause();
+    }
+    return false;
+  }
+
+  protected static boolean isRead(final Method method) {
+    return READS.contains(method.getName());
+  }
+
+  protected static Object invokeObjectMethod(final Object proxy, final Method method,
+      final Object[] args) {
+    switch (method.getName()) {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      default:
+        return "RoutingAergoClient";
+    }
+  }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.scan;
+
+import hera.api.model.Block;
+import hera.api.model.BlockMetadata;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * A scanner of a block range. A range is split into chunks fetched concurrently and blocks are
+ * handed to a consumer in a height order on a single thread. Only a bounded number of chunks are
+ * fetched ahead of a consumer, so a slow consumer slows down fetching. Blocks are checked to be
+ * linked by their previous hashes.
+ */
+public interface BlockScanner {
+
+  /**
+   * Scan blocks with transactions.
+   *
+   * @param from a first height
+   * @param to a last height, inclusive
+   * @param checkpoint a checkpoint to resume from and save to, null not to save
+   * @param consumer a consumer of blocks, it's called on a single thread
+   * @return a future of the last consumed height, cancel it to stop a scan
+   */
+  CompletableFuture<Long> scanBlocks(long from, long to, ScanCheckpoint checkpoint,
+      Consumer<Block> consumer);
+
+  /**
+   * Scan block metadatas, fetching a chunk in one {@code listBlockMetadatas} call.
+   *
+   * @param from a first height
+   * @param to a last height, inclusive
+   * @param checkpoint a checkpoint to resume from and save to, null not to save
+   * @param consumer a consumer of block metadatas, it's called on a single thread
+   * @return a future of the last consumed height, cancel it to stop a scan
+   */
+  CompletableFuture<Long> scanMetadatas(long from, long to, ScanCheckpoint checkpoint,
+      Consumer<BlockMetadata> consumer);
+
+}
@@ -0,0 +1,60 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.scan;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A checkpoint in a file holding a height in text. It's written to a temporary file and moved
+ * atomically, so a crash leaves either an old or a new one.
+ */
+public class FileCheckpoint implements ScanCheckpoint {
+
+  protected final File file;
+
+  public FileCheckpoint(final File file) {
+    this.file = file;
+  }
+
+  @Override
+  public long load() {
+    if (!file.isFile()) {
+      return 0L;
+    }
+    try {
+      return Long.parseLong(new String(Files.readAllBytes(file.toPath()), UTF_8).trim());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void save(final long height) {
+    final File temp = new File(file.getPath() + ".tmp");
+    try {
+      try (FileOutputStream out = new FileOutputStream(temp)) {
+        out.write(Long.toString(height).getBytes(UTF_8));
+        out.getFD().sync();
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FileCheckpoint{file=" + file + "}";
+  }
+
+}
@@ -0,0 +1,26 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.scan;
+
+/**
+ * A progress of a scan. It's saved after every chunk is consumed.
+ */
+public interface ScanCheckpoint {
+
+  /**
+   * Load the last consumed height.
+   *
+   * @return a height, 0 if nothing consumed
+   */
+  long load();
+
+  /**
+   * Save the last consumed height.
+   *
+   * @param height a height
+   */
+  void save(long height);
+
+}
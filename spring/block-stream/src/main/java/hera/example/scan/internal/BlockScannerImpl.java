@@ -0,0 +1,226 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.scan.internal;
+
+import hera.api.model.Block;
+import hera.api.model.BlockHash;
+import hera.api.model.BlockHeader;
+import hera.api.model.BlockMetadata;
+import hera.client.AergoClient;
+import hera.example.scan.BlockScanner;
+import hera.example.scan.ScanCheckpoint;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * A scanner running each scan on its own thread. A scan keeps up to {@code buffer} chunk fetches
+ * in a queue in a height order, takes a head one, hands it to a consumer and then dispatches the
+ * next chunk. Chunk fetches of all scans share {@code concurrency} threads and a routed client
+ * spreads them over endpoints and channels.
+ */
+@Component
+class BlockScannerImpl implements BlockScanner {
+
+  // number of blocks in a chunk, at most 1000 for listBlockMetadatas
+  @Value("${aergo.scan.chunk-size:100}")
+  protected int chunkSize;
+
+  // number of chunks fetched at once over all scans
+  @Value("${aergo.scan.concurrency:8}")
+  protected int concurrency;
+
+  // number of chunks fetched ahead of a consumer in a scan
+  @Value("${aergo.scan.buffer:16}")
+  protected int buffer;
+
+  // number of retries of a chunk fetch
+  @Value("${aergo.scan.retries:3}")
+  protected int retries;
+
+  // backoff of a retry, multiplied by attempts (ms)
+  @Value("${aergo.scan.retry-backoff:500}")
+  protected long retryBackoff;
+
+  @Autowired
+  protected AergoClient aergoClient;
+
+  protected ExecutorService fetcher;
+
+  protected ExecutorService scanners;
+
+  @PostConstruct
+  protected void init() {
+    fetcher = Executors.newFixedThreadPool(concurrency, r -> {
+      Thread thread = new Thread(r, "block-scan-fetcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final AtomicInteger sequence = new AtomicInteger(0);
+    scanners = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "block-scan-" + sequence.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    scanners.shutdownNow();
+    fetcher.shutdownNow();
+  }
+
+  @Override
+  public CompletableFuture<Long> scanBlocks(final long from, final long to,
+      final ScanCheckpoint checkpoint, final Consumer<Block> consumer) {
+    return start(new Scan<>(from, to, checkpoint, consumer, this::fetchBlocks,
+        Block::getHash, Block::getBlockHeader));
+  }
+
+  @Override
+  public CompletableFuture<Long> scanMetadatas(final long from, final long to,
+      final ScanCheckpoint checkpoint, final Consumer<BlockMetadata> consumer) {
+    return start(new Scan<>(from, to, checkpoint, consumer, this::fetchMetadatas,
+        BlockMetadata::getBlockHash, BlockMetadata::getBlockHeader));
+  }
+
+  protected <T> CompletableFuture<Long> start(final Scan<T> scan) {
+    if (scan.from < 1L || scan.to < scan.from) {
+      throw new IllegalArgumentException("Invalid range " + scan.from + " ~ " + scan.to);
+    }
+    scanners.execute(scan);
+    return scan.result;
+  }
+
+  // blocks of [from, to] one by one
+  protected List<Block> fetchBlocks(final long[] range) {
+    final List<Block> blocks = new ArrayList<>();
+    for (long height = range[0]; height <= range[1]; ++height) {
+      final Block block = aergoClient.getBlockOperation().getBlock(height);
+      if (null == block) {
+        throw new IllegalStateException("No block of " + height);
+      }
+      blocks.add(block);
+    }
+    return blocks;
+  }
+
+  // metadatas of [from, to] in one call, which lists ones before a height inclusive
+  protected List<BlockMetadata> fetchMetadatas(final long[] range) {
+    final int size = (int) (range[1] - range[0] + 1);
+    final List<BlockMetadata> metadatas = new ArrayList<>(
+        aergoClient.getBlockOperation().listBlockMetadatas(range[1], size));
+    if (metadatas.size() != size) {
+      throw new IllegalStateException("Expected " + size + " block metadatas of " + range[0]
+          + " ~ " + range[1] + " but " + metadatas.size());
+    }
+    metadatas.sort(Comparator.comparingLong(m -> m.getBlockHeader().getBlockNumber()));
+    return metadatas;
+  }
+
+  protected <T> List<T> fetchWithRetry(final Function<long[], List<T>> fetch,
+      final long[] range) {
+    int attempt = 0;
+    while (true) {
+      try {
+        return fetch.apply(range);
+      } catch (RuntimeException e) {
+        if (++attempt > retries) {
+          throw e;
+        }
+        System.err.println("Fetching blocks " + range[0] + " ~ " + range[1] + " failed, retry "
+            + attempt + ": " + e);
+        try {
+          Thread.sleep(retryBackoff * attempt);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * A scan of a range, run on its own thread.
+   */
+  protected class Scan<T> implements Runnable {
+
+    protected final long from;
+    protected final long to;
+    protected final ScanCheckpoint checkpoint;
+    protected final Consumer<T> consumer;
+    protected final Function<long[], List<T>> fetch;
+    protected final Function<T, BlockHash> hashOf;
+    protected final Function<T, BlockHeader> headerOf;
+
+    protected final CompletableFuture<Long> result = new CompletableFuture<>();
+
+    Scan(final long from, final long to, final ScanCheckpoint checkpoint,
+        final Consumer<T> consumer, final Function<long[], List<T>> fetch,
+        final Function<T, BlockHash> hashOf, final Function<T, BlockHeader> headerOf) {
+      this.from = from;
+      this.to = to;
+      this.checkpoint = checkpoint;
+      this.consumer = consumer;
+      this.fetch = fetch;
+      this.hashOf = hashOf;
+      this.headerOf = headerOf;
+    }
+
+    @Override
+    public void run() {
+      final Deque<CompletableFuture<List<T>>> inFlight = new ArrayDeque<>();
+      long consumed = (null != checkpoint) ? Math.max(from - 1, checkpoint.load()) : from - 1;
+      long next = consumed + 1;
+      BlockHash previous = null;
+      try {
+        while (consumed < to && !result.isDone()) {
+          // keep a queue full, the bound is backpressure to fetching
+          while (inFlight.size() < buffer && next <= to) {
+            final long[] range = {next, Math.min(next + chunkSize - 1, to)};
+            inFlight.add(CompletableFuture.supplyAsync(() -> fetchWithRetry(fetch, range),
+                fetcher));
+            next = range[1] + 1;
+          }
+          for (final T each : inFlight.poll().join()) {
+            final BlockHeader header = headerOf.apply(each);
+            if (null != previous && !previous.equals(header.getPreviousHash())) {
+              throw new IllegalStateException("Block " + header.getBlockNumber()
+                  + " is not linked to a previous one, it may be replaced while scanning");
+            }
+            consumer.accept(each);
+            previous = hashOf.apply(each);
+            consumed = header.getBlockNumber();
+          }
+          if (null != checkpoint) {
+            checkpoint.save(consumed);
+          }
+        }
+        result.complete(consumed);
+      } catch (CompletionException e) {
+        result.completeExceptionally(e.getCause());
+      } catch (Exception e) {
+        result.completeExceptionally(e);
+      } finally {
+        inFlight.forEach(f -> f.cancel(false));
+      }
+    }
+  }
+
+}
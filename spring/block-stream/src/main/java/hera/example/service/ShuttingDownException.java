@@ -0,0 +1,18 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service;
+
+/**
+ * Thrown on a send while a service drains in-flight transactions on shutdown.
+ */
+public class ShuttingDownException extends IllegalStateException {
+
+  private static final long serialVersionUID = 1L;
+
+  public ShuttingDownException() {
+    super("Shutting down, send to another instance");
+  }
+
+}
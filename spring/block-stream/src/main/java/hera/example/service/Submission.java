@@ -0,0 +1,57 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service;
+
+import hera.api.model.TxHash;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A committed transaction waiting for confirmation.
+ */
+public class Submission {
+
+  protected final TxHash txHash;
+
+  protected final CompletableFuture<Long> inclusion;
+
+  protected final CompletableFuture<TxHash> confirmation;
+
+  /**
+   * Create a submission.
+   *
+   * @param txHash a transaction hash, null if a transaction is not signed
+   * @param inclusion a future of a height of a block including a transaction, completing on its
+   *     confirmation
+   */
+  public Submission(final TxHash txHash, final CompletableFuture<Long> inclusion) {
+    this.txHash = txHash;
+    this.inclusion = inclusion;
+    this.confirmation = inclusion.thenApply(height -> txHash);
+  }
+
+  public TxHash getTxHash() {
+    return txHash;
+  }
+
+  public CompletableFuture<TxHash> getConfirmation() {
+    return confirmation;
+  }
+
+  /**
+   * Get a height of a block including a transaction on confirmation. Reads of an own write go to
+   * a client of {@code AergoClientPool#newRoutingClient(long)} with it.
+   *
+   * @return a future of an inclusion height
+   */
+  public CompletableFuture<Long> getInclusion() {
+    return inclusion;
+  }
+
+  @Override
+  public String toString() {
+    return "Submission{txHash=" + txHash + "}";
+  }
+
+}
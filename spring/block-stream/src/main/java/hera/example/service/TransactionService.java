@@ -3,10 +3,33 @@ package hera.example.service;
 import hera.api.model.AccountAddress;
 import hera.api.model.Aer;
 import hera.api.model.TxHash;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface TransactionService {
 
   CompletableFuture<TxHash> send(AccountAddress recipient, Aer amount);
 
+  /**
+   * Commit a transaction without waiting for confirmation.
+   *
+   * @param recipient a recipient
+   * @param amount an amount to send
+   * @return a submission holding tx hash and its confirmation
+   * @throws ShuttingDownException if a service is shutting down
+   */
+  Submission submit(AccountAddress recipient, Aer amount);
+
+  /**
+   * Commit transactions with contiguous nonces. Transactions are signed in parallel and
+   * committed in nonce order. A failure of each commit is reported by its confirmation. If
+   * signing one fails, it and later ones are not committed and get a failed confirmation with a
+   * null tx hash.
+   *
+   * @param transfers transfers to send
+   * @return submissions in the same order with {@code transfers}
+   * @throws ShuttingDownException if a service is shutting down
+   */
+  List<Submission> submitBatch(List<Transfer> transfers);
+
 }
@@ -0,0 +1,37 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service;
+
+import hera.api.model.AccountAddress;
+import hera.api.model.Aer;
+
+/**
+ * A recipient and an amount to send.
+ */
+public class Transfer {
+
+  protected final AccountAddress recipient;
+
+  protected final Aer amount;
+
+  public Transfer(final AccountAddress recipient, final Aer amount) {
+    this.recipient = recipient;
+    this.amount = amount;
+  }
+
+  public AccountAddress getRecipient() {
+    return recipient;
+  }
+
+  public Aer getAmount() {
+    return amount;
+  }
+
+  @Override
+  public String toString() {
+    return "Transfer{recipient=" + recipient + ", amount=" + amount + "}";
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import hera.example.service.internal.TxJournal.Record;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Files handing pending submissions over to a successor instance, in the same record format with
+ * {@link TxJournal}. Each instance writes its own file in a shared directory, so concurrent
+ * drainers don't collide. A file is written to a temporary file and moved atomically, so a
+ * successor never reads a partial one.
+ */
+final class HandoffFile {
+
+  static final String PREFIX = "handoff-";
+
+  static final String SUFFIX = ".bin";
+
+  // unique among instances sharing a directory, like 1234@host-1600000000000
+  static final String INSTANCE = ManagementFactory.getRuntimeMXBean().getName()
+      .replaceAll("[^A-Za-z0-9@.-]", "_") + "-" + System.currentTimeMillis();
+
+  private HandoffFile() {
+  }
+
+  /**
+   * Write records to a file of this instance, replacing an old one.
+   *
+   * @param directory a handoff directory
+   * @param records records to hand off
+   * @return a written file
+   * @throws IOException on failure
+   */
+  static File write(final File directory, final List<Record> records) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot make " + directory);
+    }
+    final File file = new File(directory, PREFIX + INSTANCE + SUFFIX);
+    final File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(temp)) {
+      for (final Record record : records) {
+        out.write(record.encode());
+      }
+      out.getFD().sync();
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    return file;
+  }
+
+  /**
+   * Read records of files written by other instances and remove them. A file is claimed by an
+   * atomic rename first, so that it's taken over once even by concurrent successors.
+   *
+   * @param directory a handoff directory
+   * @return records, empty if no file
+   * @throws IOException on failure
+   */
+  static List<Record> takeAll(final File directory) throws IOException {
+    final List<Record> records = new ArrayList<>();
+    final File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX)
+        && name.endsWith(SUFFIX) && !name.equals(PREFIX + INSTANCE + SUFFIX));
+    if (null == files) {
+      return records;
+    }
+    for (final File file : files) {
+      final File claimed = new File(file.getPath() + ".claimed-" + INSTANCE);
+      try {
+        Files.move(file.toPath(), claimed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (NoSuchFileException e) {
+        // taken by another successor
+        continue;
+      }
+      final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(claimed.toPath()));
+      Record record;
+      while (null != (record = Record.decode(buffer))) {
+        records.add(record);
+      }
+      Files.delete(claimed.toPath());
+    }
+    return records;
+  }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import hera.api.model.AccountState;
+import hera.api.model.TxHash;
+import hera.client.AergoClient;
+import hera.example.service.internal.TxJournal.Record;
+import hera.example.stream.BlockStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Replays submissions left unresolved in {@link TxJournal} and ones handed off by a predecessor
+ * on startup. A transaction included in
+ * a block while stopped is resolved as confirmed, one still in a mempool is tracked again with its
+ * nonce in flight and one a node reports as known to neither is resolved as failed and its nonce
+ * is freed. One a node fails to look up after retries is tracked again as if in a mempool, or
+ * left unresolved for a next start if its sender is not configured. A stream starts after
+ * lookups and doesn't fill blocks before its first one, so a replayed one expired is looked up
+ * again before it's given up.
+ *
+ * <p>In a rolling deploy, a predecessor drains after a successor started, so a handoff directory
+ * is polled while running too. A submission handed off then is tracked for its confirmation only,
+ * since nonces of a running sender are bound already.
+ */
+@Component
+class JournalReplayer {
+
+  // written by predecessors on shutdown, empty not to take over
+  @Value("${aergo.shutdown.handoff-dir:}")
+  protected String handoffDir;
+
+  @Value("${aergo.shutdown.handoff-poll-interval:1000}")
+  protected long handoffPollInterval;
+
+  // number of retries of a lookup failed by a node
+  @Value("${aergo.journal.replay.retries:3}")
+  protected int retries;
+
+  // backoff of a retry, multiplied by attempts (ms)
+  @Value("${aergo.journal.replay.retry-backoff:500}")
+  protected long retryBackoff;
+
+  @Autowired
+  protected TxJournal journal;
+
+  @Autowired
+  protected SenderPool senderPool;
+
+  @Autowired
+  protected BlockStream blockStream;
+
+  @Autowired
+  protected AergoClient aergoClient;
+
+  @Autowired
+  protected TransactionServiceImpl transactionService;
+
+  // polls handoffs and looks up expired ones again
+  protected ScheduledExecutorService executor;
+
+  @PostConstruct
+  protected void init() throws IOException {
+    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "journal-replayer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    replay();
+    if (!handoffDir.isEmpty()) {
+      executor.scheduleWithFixedDelay(this::takeOver, handoffPollInterval, handoffPollInterval,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    executor.shutdownNow();
+  }
+
+  protected void replay() throws IOException {
+    if (!handoffDir.isEmpty()) {
+      final List<Record> handedOff = HandoffFile.takeAll(new File(handoffDir));
+      for (final Record record : handedOff) {
+        // journal again so that it's resolved below like others
+        if (!journal.isUnresolved(record.getTxHash())) {
+          journal.submitted(record.getTxHash(), record.getSender(), record.getNonce());
+        }
+      }
+      if (!handedOff.isEmpty()) {
+        System.err.println("Took over " + handedOff.size() + " submissions from " + handoffDir);
+      }
+    }
+
+    final List<Record> records = journal.getUnresolved();
+    if (records.isEmpty()) {
+      return;
+    }
+
+    final Map<ByteBuffer, Sender> senders = new HashMap<>();
+    for (final Sender sender : senderPool.getSenders()) {
+      senders.put(ByteBuffer.wrap(sender.getAddress().getBytesValue().getValue()), sender);
+    }
+
+    // sender -> records still in a mempool
+    final Map<Sender, List<Record>> inMempool = new LinkedHashMap<>();
+    int confirmed = 0;
+    int lost = 0;
+    int unknown = 0;
+    for (final Record record : records) {
+      final Sender sender = senders.get(ByteBuffer.wrap(record.sender));
+      final TxHash txHash = record.getTxHash();
+      final Lookup included = lookup(txHash,
+          () -> aergoClient.getTransactionOperation().getTxReceipt(txHash));
+      if (Lookup.FOUND == included) {
+        journal.resolved(txHash, TxJournal.CONFIRMED);
+        ++confirmed;
+        continue;
+      }
+      final Lookup pooled = lookup(txHash,
+          () -> aergoClient.getTransactionOperation().getTransaction(txHash));
+      if (Lookup.NOT_FOUND == included && Lookup.NOT_FOUND == pooled) {
+        // never committed or dropped
+        journal.resolved(txHash, TxJournal.FAILED);
+        ++lost;
+      } else if (null != sender) {
+        // in a mempool or unknown, keep its nonce in flight until confirmed or expired
+        inMempool.computeIfAbsent(sender, k -> new ArrayList<>()).add(record);
+        if (Lookup.UNKNOWN == included || Lookup.UNKNOWN == pooled) {
+          ++unknown;
+        }
+      } else if (Lookup.FOUND == pooled) {
+        // its sender is not configured any more
+        journal.resolved(txHash, TxJournal.FAILED);
+        ++lost;
+      } else {
+        ++unknown;
+      }
+    }
+
+    // bind before tracking so that a nonce is completed after restored
+    for (final Sender sender : senderPool.getSenders()) {
+      final List<Record> pending = inMempool.getOrDefault(sender, new ArrayList<>());
+      final List<Long> nonces = new ArrayList<>(pending.size());
+      pending.forEach(r -> nonces.add(r.getNonce()));
+      final NonceManager nonceManager = sender.getNonceManager();
+      synchronized (nonceManager) {
+        final AccountState state = aergoClient.getAccountOperation()
+            .getState(sender.getAddress());
+        nonceManager.bind(state.getNonce());
+        nonceManager.restore(nonces);
+      }
+    }
+    for (final Map.Entry<Sender, List<Record>> entry : inMempool.entrySet()) {
+      for (final Record record : entry.getValue()) {
+        final CompletableFuture<TxHash> future = blockStream.submit(record.getTxHash());
+        entry.getKey().track(record.getNonce(), future);
+        resolveReplayed(record.getTxHash(), future);
+      }
+    }
+
+    final int tracked = records.size() - confirmed - lost;
+    System.err.println("Replayed journal: " + confirmed + " confirmed, " + tracked
+        + " tracked again or left (" + unknown + " unknown), " + lost + " lost");
+  }
+
+  /**
+   * Resolve a replayed submission on its confirmation. One included after its lookup and before
+   * a first streamed block is never matched by a stream, so an expired one is looked up again.
+   *
+   * @param txHash a transaction hash
+   * @param future a confirmation
+   */
+  protected void resolveReplayed(final TxHash txHash, final CompletableFuture<TxHash> future) {
+    future.whenCompleteAsync((r, e) -> {
+      final Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+      if (!(cause instanceof TimeoutException)) {
+        return;
+      }
+      final Lookup included = lookup(txHash,
+          () -> aergoClient.getTransactionOperation().getTxReceipt(txHash));
+      journal.resolved(txHash, (Lookup.FOUND == included) ? TxJournal.CONFIRMED
+          : TxJournal.EXPIRED);
+    }, executor);
+    // others resolved as on a send
+    final CompletableFuture<TxHash> unlessExpired = new CompletableFuture<>();
+    future.whenComplete((r, e) -> {
+      final Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+      if (null == e) {
+        unlessExpired.complete(r);
+      } else if (!(cause instanceof TimeoutException)) {
+        unlessExpired.completeExceptionally(cause);
+      }
+    });
+    transactionService.resolveOnDone(txHash, unlessExpired);
+  }
+
+  /**
+   * Take over submissions handed off while running. One is tracked by a block stream before its
+   * receipt is looked up, so that one included in between is matched by a stream.
+   */
+  protected void takeOver() {
+    final List<Record> handedOff;
+    try {
+      handedOff = HandoffFile.takeAll(new File(handoffDir));
+    } catch (Exception e) {
+      System.err.println("Taking handoff files failed: " + e);
+      return;
+    }
+    int confirmed = 0;
+    for (final Record record : handedOff) {
+      final TxHash txHash = record.getTxHash();
+      if (journal.isUnresolved(txHash)) {
+        continue;
+      }
+      journal.submitted(txHash, record.getSender(), record.getNonce());
+      try {
+        transactionService.resolveOnDone(txHash, blockStream.submit(txHash));
+      } catch (Exception e) {
+        System.err.println("Tracking handed off " + txHash + " failed: " + e);
+        continue;
+      }
+      final Lookup included = lookup(txHash,
+          () -> aergoClient.getTransactionOperation().getTxReceipt(txHash));
+      // one matched by a stream meanwhile is resolved on its future
+      if (Lookup.FOUND == included && blockStream.unsubmit(txHash)) {
+        journal.resolved(txHash, TxJournal.CONFIRMED);
+        ++confirmed;
+      }
+    }
+    if (!handedOff.isEmpty()) {
+      System.err.println("Took over " + handedOff.size() + " submissions from " + handoffDir
+          + " while running, " + confirmed + " confirmed already");
+    }
+  }
+
+  /**
+   * Look a transaction up, retrying a failure. Only a null or a not found error of a node is
+   * taken as not found.
+   *
+   * @param txHash a transaction hash
+   * @param call a lookup call
+   * @return a lookup result
+   */
+  protected Lookup lookup(final TxHash txHash, final Supplier<?> call) {
+    int attempt = 0;
+    while (true) {
+      try {
+        return (null != call.get()) ? Lookup.FOUND : Lookup.NOT_FOUND;
+      } catch (Exception e) {
+        if (isNotFound(e)) {
+          return Lookup.NOT_FOUND;
+        }
+        if (++attempt > retries) {
+          System.err.println("Looking up " + txHash + " failed, leave it unknown: " + e);
+          return Lookup.UNKNOWN;
+        }
+        try {
+          Thread.sleep(retryBackoff * attempt);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return Lookup.UNKNOWN;
+        }
+      }
+    }
+  }
+
+  // heraj wraps grpc errors, so find a grpc status in a cause chain
+  protected static boolean isNotFound(final Exception e) {
+    Throwable cause = e;
+    for (int depth = 0; null != cause && depth < 8; ++depth) {
+      if (cause.getClass().getName().startsWith("io.grpc.Status")
+          && String.valueOf(cause.getMessage()).startsWith("NOT_FOUND")) {
+        return true;
+      }
+      cause = cause.getCause();
+    }
+    return false;
+  }
+
+  protected enum Lookup {
+    FOUND, NOT_FOUND, UNKNOWN
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills nonce gaps which are not re-issued to a next transaction in time.
+ */
+@Component
+class NonceGapRepairer {
+
+  // time to wait for a freed nonce to be re-issued (ms), 0 to disable
+  @Value("${aergo.sender.nonce.gap-timeout:3000}")
+  protected long gapTimeout;
+
+  @Autowired
+  protected SenderPool senderPool;
+
+  @Autowired
+  protected TransactionServiceImpl transactionService;
+
+  protected ScheduledExecutorService scheduler;
+
+  @PostConstruct
+  protected void init() {
+    if (gapTimeout <= 0L) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "nonce-gap-repairer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final long period = Math.max(gapTimeout / 2, 100L);
+    scheduler.scheduleWithFixedDelay(this::repair, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    if (null != scheduler) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  protected void repair() {
+    for (final Sender sender : senderPool.getSenders()) {
+      try {
+        for (final long nonce : sender.getNonceManager().takeStaleGaps(gapTimeout)) {
+          System.err.println("Fill nonce gap " + nonce + " of " + sender);
+          transactionService.fillGap(sender, nonce);
+        }
+      } catch (Exception e) {
+        System.err.println("Repairing nonce gap of " + sender + " failed: " + e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Tracks nonces of a single account. A nonce freed by a failed commit is re-issued to a next
+ * transaction first, so a failure doesn't leave a gap which blocks every later transaction.
+ */
+class NonceManager {
+
+  protected boolean bound = false;
+
+  // highest nonce issued
+  protected long lastIssued = 0L;
+
+  // nonces committed but not confirmed yet
+  protected final NavigableSet<Long> inFlight = new TreeSet<>();
+
+  // freed nonce -> freed time in millis
+  protected final NavigableMap<Long, Long> freed = new TreeMap<>();
+
+  synchronized boolean isBound() {
+    return bound;
+  }
+
+  /**
+   * Bind nonce with a last used one.
+   *
+   * @param lastUsed a last used nonce in a chain
+   */
+  synchronized void bind(final long lastUsed) {
+    lastIssued = lastUsed;
+    inFlight.clear();
+    freed.clear();
+    bound = true;
+  }
+
+  /**
+   * Acquire a nonce. A freed one is preferred.
+   *
+   * @return a nonce to use
+   */
+  synchronized long acquire() {
+    final Map.Entry<Long, Long> reusable = freed.pollFirstEntry();
+    final long nonce = (null != reusable) ? reusable.getKey() : ++lastIssued;
+    inFlight.add(nonce);
+    return nonce;
+  }
+
+  /**
+   * Acquire contiguous nonces. Freed ones are not used to keep them contiguous.
+   *
+   * @param count a number of nonces
+   * @return a first nonce of range
+   */
+  synchronized long acquireRange(final int count) {
+    final long first = lastIssued + 1;
+    for (int i = 0; i < count; ++i) {
+      inFlight.add(++lastIssued);
+    }
+    return first;
+  }
+
+  /**
+   * Release a nonce whose transaction is not committed.
+   *
+   * @param nonce a nonce to release
+   */
+  synchronized void release(final long nonce) {
+    if (!inFlight.remove(nonce)) {
+      return;
+    }
+    if (nonce == lastIssued) {
+      // just roll back a top, including freed ones just below it
+      --lastIssued;
+      while (null != freed.remove(lastIssued)) {
+        --lastIssued;
+      }
+    } else {
+      freed.put(nonce, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Mark a nonce as done since its transaction is confirmed or given up.
+   *
+   * @param nonce a nonce
+   */
+  synchronized void complete(final long nonce) {
+    inFlight.remove(nonce);
+  }
+
+  /**
+   * Take freed nonces not re-issued for {@code timeoutMillis}. They are gaps blocking later
+   * transactions and a caller should fill them.
+   *
+   * @param timeoutMillis a time to wait for re-issue
+   * @return nonces to fill, which are marked as in-flight
+   */
+  synchronized List<Long> takeStaleGaps(final long timeoutMillis) {
+    final long threshold = System.currentTimeMillis() - timeoutMillis;
+    final List<Long> stale = new ArrayList<>();
+    final Iterator<Map.Entry<Long, Long>> it = freed.entrySet().iterator();
+    while (it.hasNext()) {
+      final Map.Entry<Long, Long> entry = it.next();
+      if (entry.getValue() <= threshold) {
+        stale.add(entry.getKey());
+        inFlight.add(entry.getKey());
+        it.remove();
+      }
+    }
+    return stale;
+  }
+
+  /**
+   * Resync with a nonce in a chain. Nonces already used in a chain are forgot.
+   *
+   * @param chainNonce a last used nonce in a chain
+   */
+  synchronized void resync(final long chainNonce) {
+    freed.headMap(chainNonce, true).clear();
+    inFlight.headSet(chainNonce, true).clear();
+    if (lastIssued < chainNonce) {
+      lastIssued = chainNonce;
+    }
+  }
+
+  /**
+   * Restore nonces in flight before a restart, after binding with a chain. A nonce between a
+   * chain one and a highest restored one which is not restored is lost, so it's freed to be
+   * re-issued or filled.
+   *
+   * @param nonces nonces of transactions still in a mempool
+   */
+  synchronized void restore(final Collection<Long> nonces) {
+    final long chainNonce = lastIssued;
+    long highest = chainNonce;
+    for (final long nonce : nonces) {
+      if (nonce > chainNonce) {
+        inFlight.add(nonce);
+        highest = Math.max(highest, nonce);
+      }
+    }
+    final long now = System.currentTimeMillis();
+    for (long nonce = chainNonce + 1; nonce < highest; ++nonce) {
+      if (!inFlight.contains(nonce)) {
+        freed.put(nonce, now);
+      }
+    }
+    lastIssued = highest;
+  }
+
+  /**
+   * Get a distance from a lowest unconfirmed nonce to a highest issued one.
+   *
+   * @return a nonce lag, 0 if nothing is in flight
+   */
+  synchronized long getLag() {
+    return inFlight.isEmpty() ? 0L : lastIssued - inFlight.first() + 1;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "NonceManager{lastIssued=" + lastIssued + ", inFlight=" + inFlight.size()
+        + ", freed=" + freed.keySet() + "}";
+  }
+
+}
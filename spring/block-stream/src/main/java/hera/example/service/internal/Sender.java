@@ -0,0 +1,62 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import hera.api.model.AccountAddress;
+import hera.key.AergoKey;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A key sending transactions with its own nonce sequence.
+ */
+class Sender {
+
+  protected final AergoKey key;
+
+  protected final NonceManager nonceManager = new NonceManager();
+
+  protected final AtomicInteger pendingCount = new AtomicInteger(0);
+
+  Sender(final AergoKey key) {
+    this.key = key;
+  }
+
+  AergoKey getKey() {
+    return key;
+  }
+
+  AccountAddress getAddress() {
+    return key.getAddress();
+  }
+
+  NonceManager getNonceManager() {
+    return nonceManager;
+  }
+
+  int getPendingCount() {
+    return pendingCount.get();
+  }
+
+  /**
+   * Count a confirmation as pending until it's done.
+   *
+   * @param nonce a nonce of transaction
+   * @param confirmation a confirmation of transaction sent by this
+   */
+  void track(final long nonce, final CompletableFuture<?> confirmation) {
+    pendingCount.incrementAndGet();
+    confirmation.whenComplete((r, e) -> {
+      pendingCount.decrementAndGet();
+      nonceManager.complete(nonce);
+    });
+  }
+
+  @Override
+  public String toString() {
+    return "Sender{address=" + getAddress() + ", pending=" + getPendingCount() + "}";
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import hera.key.AergoKey;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * A pool of senders. Since each sender has its own nonce sequence, throughput scales with the
+ * number of keys.
+ */
+@Component
+class SenderPool {
+
+  // comma separated {wif}:{password}
+  @Value("${aergo.sender.keys:}")
+  protected String keys;
+
+  // round-robin or least-pending
+  @Value("${aergo.sender.selection:least-pending}")
+  protected String selection;
+
+  @Value("${aergo.sender.include-treasury:true}")
+  protected boolean includeTreasury;
+
+  @Autowired
+  protected AergoKey richKey;
+
+  @Autowired
+  protected MeterRegistry meterRegistry;
+
+  protected Sender treasury;
+
+  protected List<Sender> senders;
+
+  protected final AtomicInteger cursor = new AtomicInteger(0);
+
+  @PostConstruct
+  protected void init() {
+    treasury = new Sender(richKey);
+    final List<Sender> pool = new ArrayList<>();
+    if (includeTreasury) {
+      pool.add(treasury);
+    }
+    for (final String each : keys.split(",")) {
+      final String trimmed = each.trim();
+      if (trimmed.isEmpty()) {
+        continue;
+      }
+      final int delimiter = trimmed.indexOf(':');
+      if (delimiter < 0) {
+        throw new IllegalArgumentException("Sender key must be {wif}:{password}");
+      }
+      pool.add(new Sender(AergoKey.of(trimmed.substring(0, delimiter),
+          trimmed.substring(delimiter + 1))));
+    }
+    if (pool.isEmpty()) {
+      throw new IllegalStateException("No sender key configured");
+    }
+    senders = Collections.unmodifiableList(pool);
+
+    for (final Sender sender : senders) {
+      final String address = sender.getAddress().getEncoded();
+      Gauge.builder("aergo.sender.nonce.lag", sender.getNonceManager(), NonceManager::getLag)
+          .description("Nonces issued but not confirmed")
+          .tag("address", address)
+          .register(meterRegistry);
+      Gauge.builder("aergo.sender.pending", sender, Sender::getPendingCount)
+          .description("Confirmations pending for a sender")
+          .tag("address", address)
+          .register(meterRegistry);
+    }
+  }
+
+  /**
+   * Select a sender to send next transaction.
+   *
+   * @return a sender
+   */
+  Sender select() {
+    if ("round-robin".equals(selection)) {
+      return senders.get(Math.floorMod(cursor.getAndIncrement(), senders.size()));
+    }
+
+    // start from a rotating point to spread ties
+    final int start = Math.floorMod(cursor.getAndIncrement(), senders.size());
+    Sender selected = senders.get(start);
+    for (int i = 1; i < senders.size(); ++i) {
+      final Sender candidate = senders.get((start + i) % senders.size());
+      if (candidate.getPendingCount() < selected.getPendingCount()) {
+        selected = candidate;
+      }
+    }
+    return selected;
+  }
+
+  Sender getTreasury() {
+    return treasury;
+  }
+
+  List<Sender> getSenders() {
+    return senders;
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import hera.api.model.AccountState;
+import hera.api.model.Aer;
+import hera.api.model.Aer.Unit;
+import hera.example.account.AccountStateCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tops up senders from a treasury key when their balances are low.
+ */
+@Component
+class SenderRebalancer {
+
+  // 0 to disable
+  @Value("${aergo.sender.rebalance.interval:10000}")
+  protected long interval;
+
+  // in aergo
+  @Value("${aergo.sender.rebalance.min-balance:100}")
+  protected String minBalance;
+
+  // in aergo
+  @Value("${aergo.sender.rebalance.target-balance:1000}")
+  protected String targetBalance;
+
+  @Autowired
+  protected SenderPool senderPool;
+
+  @Autowired
+  protected TransactionServiceImpl transactionService;
+
+  @Autowired
+  protected AccountStateCache accountStateCache;
+
+  @Autowired
+  protected MeterRegistry meterRegistry;
+
+  protected Counter topUpCount;
+
+  protected ScheduledExecutorService scheduler;
+
+  // sender -> top-up in flight
+  protected final Map<Sender, CompletableFuture<?>> topUps = new ConcurrentHashMap<>();
+
+  @PostConstruct
+  protected void init() {
+    topUpCount = Counter.builder("aergo.sender.topup")
+        .description("Top-ups of a low sender from a treasury")
+        .register(meterRegistry);
+    if (interval <= 0L || 1 >= senderPool.getSenders().size()) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "sender-rebalancer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::rebalance, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    if (null != scheduler) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  protected void rebalance() {
+    final BigInteger min = Aer.of(minBalance, Unit.AERGO).getValue();
+    final BigInteger target = Aer.of(targetBalance, Unit.AERGO).getValue();
+    final Sender treasury = senderPool.getTreasury();
+    for (final Sender sender : senderPool.getSenders()) {
+      if (sender == treasury || topUps.containsKey(sender)) {
+        continue;
+      }
+      try {
+        final AccountState state = accountStateCache.getState(sender.getAddress());
+        final BigInteger balance = state.getBalance().getValue();
+        if (balance.compareTo(min) >= 0) {
+          continue;
+        }
+        final Aer amount = Aer.of(target.subtract(balance).toString());
+        final CompletableFuture<?> topUp = transactionService
+            .submit(treasury, sender.getAddress(), amount).getConfirmation();
+        topUpCount.increment();
+        topUps.put(sender, topUp);
+        topUp.whenComplete((r, e) -> topUps.remove(sender));
+      } catch (Exception e) {
+        System.err.println("Rebalancing " + sender + " failed: " + e);
+      }
+    }
+  }
+
+}
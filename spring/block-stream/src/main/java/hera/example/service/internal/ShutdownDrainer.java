@@ -0,0 +1,107 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import hera.example.chain.ChainParameters;
+import hera.example.service.internal.TxJournal.Record;
+import hera.example.stream.BlockStream;
+import java.io.File;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drains in-flight sends on shutdown. It rejects new sends, keeps a block stream alive until
+ * pending transactions are confirmed or a number of blocks pass, and writes ones still pending
+ * to a file of this instance in a handoff directory, which a running successor polls. Lifecycle beans are stopped before a web server, so a
+ * caller waiting for confirmation still gets a response.
+ */
+@Component
+class ShutdownDrainer implements SmartLifecycle {
+
+  @Value("${aergo.shutdown.drain-blocks:10}")
+  protected long drainBlocks;
+
+  @Value("${aergo.shutdown.drain-timeout:60000}")
+  protected long drainTimeout;
+
+  // empty not to hand off
+  @Value("${aergo.shutdown.handoff-dir:}")
+  protected String handoffDir;
+
+  @Autowired
+  protected TransactionServiceImpl transactionService;
+
+  @Autowired
+  protected BlockStream blockStream;
+
+  @Autowired
+  protected ChainParameters chainParameters;
+
+  @Autowired
+  protected TxJournal journal;
+
+  protected volatile boolean running = false;
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    transactionService.stopAccepting();
+    try {
+      drain();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    handOff();
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  // stop first among lifecycle beans
+  @Override
+  public int getPhase() {
+    return Integer.MAX_VALUE;
+  }
+
+  protected void drain() throws InterruptedException {
+    final long startHeight = chainParameters.getBestHeight();
+    final long deadline = System.currentTimeMillis() + drainTimeout;
+    System.err.println("Drain " + blockStream.getPendingCount() + " pending for up to "
+        + drainBlocks + " blocks");
+    while (blockStream.getPendingCount() > 0
+        && chainParameters.getBestHeight() - startHeight < drainBlocks
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100L);
+    }
+  }
+
+  protected void handOff() {
+    final List<Record> left = journal.getUnresolved();
+    if (left.isEmpty()) {
+      return;
+    }
+    if (handoffDir.isEmpty()) {
+      System.err.println(left.size() + " submissions left unconfirmed without handoff");
+      return;
+    }
+    try {
+      final File file = HandoffFile.write(new File(handoffDir), left);
+      System.err.println("Handed " + left.size() + " submissions off to " + file);
+    } catch (Exception e) {
+      System.err.println("Writing handoff file failed: " + e);
+    }
+  }
+
+}
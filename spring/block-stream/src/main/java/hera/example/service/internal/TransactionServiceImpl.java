@@ -12,30 +12,47 @@ import hera.api.model.Fee;
 import hera.api.model.RawTransaction;
 import hera.api.model.Transaction;
 import hera.api.model.TxHash;
-import hera.api.transaction.NonceProvider;
 import hera.client.AergoClient;
+import hera.example.chain.ChainParameters;
+import hera.example.service.ShuttingDownException;
+import hera.example.service.Submission;
 import hera.example.service.TransactionService;
+import hera.example.service.Transfer;
 import hera.example.stream.BlockStream;
-import hera.key.AergoKey;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 class TransactionServiceImpl implements TransactionService {
 
-  protected final Object lock = new Object();
-  protected volatile boolean hasBinded = false;
+  @Value("${aergo.send.batch.commit-concurrency:4}")
+  protected int commitConcurrency;
 
-  @Autowired
-  protected Supplier<ChainIdHash> chainIdHashSupplier;
+  protected ExecutorService signer;
+
+  protected ExecutorService committer;
 
   @Autowired
-  protected NonceProvider nonceProvider;
+  protected ChainParameters chainParameters;
 
   @Autowired
-  protected AergoKey richKey;
+  protected SenderPool senderPool;
 
   @Autowired
   protected BlockStream blockStream;
@@ -43,51 +60,278 @@ class TransactionServiceImpl implements TransactionService {
   @Autowired
   protected AergoClient aergoClient;
 
+  @Autowired
+  protected MeterRegistry meterRegistry;
+
+  @Autowired
+  protected TxJournal journal;
+
+  protected Timer signTimer;
+
+  protected Timer commitSuccessTimer;
+
+  protected Timer commitFailureTimer;
+
+  protected volatile boolean accepting = true;
+
+  @PostConstruct
+  protected void init() {
+    signer = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+        daemon("tx-signer"));
+    committer = Executors.newFixedThreadPool(commitConcurrency, daemon("tx-committer"));
+    signTimer = Timer.builder("aergo.tx.sign")
+        .description("Time to sign a transaction")
+        .register(meterRegistry);
+    commitSuccessTimer = commitTimer("success");
+    commitFailureTimer = commitTimer("failure");
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    signer.shutdown();
+    committer.shutdown();
+  }
+
   @Override
   public CompletableFuture<TxHash> send(AccountAddress recipient, Aer amount) {
-    // bind nonce of rich key once
-    if (!hasBinded) {
-      synchronized (lock) {
-        if (!hasBinded) {
-          bindRichState();
-          hasBinded = true;
-        }
-      }
-    }
+    return submit(recipient, amount).getConfirmation();
+  }
+
+  @Override
+  public Submission submit(AccountAddress recipient, Aer amount) {
+    return submit(senderPool.select(), recipient, amount);
+  }
+
+  protected Submission submit(Sender sender, AccountAddress recipient, Aer amount) {
+    ensureAccepting();
+    bindOnce(sender);
+    final NonceManager nonceManager = sender.getNonceManager();
 
     // make a transaction
-    RawTransaction rawTransaction = RawTransaction.newBuilder()
-        .chainIdHash(chainIdHashSupplier.get())
-        .from(richKey.getAddress())
-        .to(recipient)
-        .amount(amount)
-        .nonce(nonceProvider.incrementAndGetNonce(richKey.getAddress()))
-        .fee(Fee.EMPTY)
-        .build();
-    Transaction signed = richKey.sign(rawTransaction);
+    final long nonce = nonceManager.acquire();
+    RawTransaction rawTransaction = buildTransaction(chainParameters.getChainIdHash(), sender,
+        recipient, amount, nonce);
+    Transaction signed = sign(sender, rawTransaction);
 
     // tx hash
     TxHash txHash = signed.getHash();
 
     // submit tx hash before commit
-    CompletableFuture<TxHash> future = blockStream.submit(txHash);
+    CompletableFuture<Long> future;
+    try {
+      future = blockStream.submitForHeight(txHash);
+    } catch (Exception e) {
+      nonceManager.release(nonce);
+      throw e;
+    }
 
     // commit signed tx
+    journal.submitted(txHash, sender.getAddress(), nonce);
     try {
-      aergoClient.getTransactionOperation().commit(signed);
+      commit(signed);
     } catch (Exception e) {
       // unsubmit on commit error to prevent memory leak
       blockStream.unsubmit(txHash);
+      journal.resolved(txHash, TxJournal.FAILED);
+      // give back a nonce to next transaction not to leave a gap
+      nonceManager.release(nonce);
       throw new IllegalStateException(e);
     }
 
-    return future;
+    sender.track(nonce, future);
+    resolveOnDone(txHash, future);
+    return new Submission(txHash, future);
   }
 
-  protected void bindRichState() {
+  @Override
+  public List<Submission> submitBatch(List<Transfer> transfers) {
+    ensureAccepting();
+    if (transfers.isEmpty()) {
+      return new ArrayList<>(0);
+    }
+    // a batch is sent by a single sender to keep its nonces contiguous
+    final Sender sender = senderPool.select();
+    bindOnce(sender);
+
+    // reserve nonce range once
+    final ChainIdHash chainIdHash = chainParameters.getChainIdHash();
+    final NonceManager nonceManager = sender.getNonceManager();
+    final long firstNonce = nonceManager.acquireRange(transfers.size());
+
+    // sign in parallel
+    final List<CompletableFuture<Transaction>> signings = new ArrayList<>(transfers.size());
+    for (int i = 0; i < transfers.size(); ++i) {
+      final RawTransaction rawTransaction = buildTransaction(chainIdHash, sender,
+          transfers.get(i).getRecipient(), transfers.get(i).getAmount(), firstNonce + i);
+      signings.add(CompletableFuture.supplyAsync(() -> sign(sender, rawTransaction), signer));
+    }
+
+    // commit in nonce order while later ones are still being signed
+    final List<Submission> submissions = new ArrayList<>(transfers.size());
+    for (int i = 0; i < signings.size(); ++i) {
+      final long nonce = firstNonce + i;
+      final Transaction signed;
+      try {
+        signed = signings.get(i).join();
+      } catch (Exception e) {
+        // later ones can't be committed without a gap, so give back the rest of a range from
+        // a top, which rolls back as far as no later nonce is issued
+        for (long rest = firstNonce + signings.size() - 1; rest >= nonce; --rest) {
+          nonceManager.release(rest);
+        }
+        final Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+        System.err.println("Signing a batch failed at nonce " + nonce + ": " + cause);
+        while (submissions.size() < signings.size()) {
+          final CompletableFuture<Long> failed = new CompletableFuture<>();
+          failed.completeExceptionally(cause);
+          submissions.add(new Submission(null, failed));
+        }
+        break;
+      }
+      final TxHash txHash = signed.getHash();
+      final CompletableFuture<Long> confirmation = new CompletableFuture<>();
+      try {
+        blockStream.submitForHeight(txHash).whenComplete((height, e) -> {
+          if (null != e) {
+            confirmation.completeExceptionally(e);
+          } else {
+            confirmation.complete(height);
+          }
+        });
+        committer.execute(() -> {
+          try {
+            journal.submitted(txHash, sender.getAddress(), nonce);
+            commit(signed);
+            sender.track(nonce, confirmation);
+            resolveOnDone(txHash, confirmation);
+          } catch (Exception e) {
+            blockStream.unsubmit(txHash);
+            journal.resolved(txHash, TxJournal.FAILED);
+            nonceManager.release(nonce);
+            confirmation.completeExceptionally(e);
+          }
+        });
+      } catch (Exception e) {
+        nonceManager.release(nonce);
+        confirmation.completeExceptionally(e);
+      }
+      submissions.add(new Submission(txHash, confirmation));
+    }
+    return submissions;
+  }
+
+  protected Transaction sign(final Sender sender, final RawTransaction rawTransaction) {
+    return signTimer.record(() -> sender.getKey().sign(rawTransaction));
+  }
+
+  protected void commit(final Transaction signed) {
+    final long start = System.nanoTime();
+    try {
+      aergoClient.getTransactionOperation().commit(signed);
+      commitSuccessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    } catch (RuntimeException e) {
+      commitFailureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      throw e;
+    }
+  }
+
+  protected Timer commitTimer(final String outcome) {
+    return Timer.builder("aergo.tx.commit")
+        .description("Time of commit rpc")
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Reject later sends. Ones already accepted are still tracked.
+   */
+  void stopAccepting() {
+    accepting = false;
+  }
+
+  protected void ensureAccepting() {
+    if (!accepting) {
+      throw new ShuttingDownException();
+    }
+  }
+
+  // resolve a journaled submission once its confirmation is done, except one cancelled by a
+  // shutdown which is left for a replay
+  protected void resolveOnDone(final TxHash txHash, final CompletableFuture<?> confirmation) {
+    confirmation.whenComplete((r, e) -> {
+      if (null == e) {
+        journal.resolved(txHash, TxJournal.CONFIRMED);
+        return;
+      }
+      final Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+      if (cause instanceof TimeoutException) {
+        journal.resolved(txHash, TxJournal.EXPIRED);
+      } else if (!(cause instanceof CancellationException)) {
+        journal.resolved(txHash, TxJournal.FAILED);
+      }
+    });
+  }
+
+  /**
+   * Fill a nonce gap left by a failed commit with an empty self transfer. Resync with a chain if
+   * it fails since a nonce may be used already.
+   *
+   * @param sender a sender
+   * @param nonce a nonce to fill
+   */
+  protected void fillGap(final Sender sender, final long nonce) {
+    final NonceManager nonceManager = sender.getNonceManager();
+    try {
+      Transaction filler = sign(sender, buildTransaction(
+          chainParameters.getChainIdHash(), sender, sender.getAddress(), Aer.ZERO, nonce));
+      commit(filler);
+      nonceManager.complete(nonce);
+    } catch (Exception e) {
+      System.err.println("Filling nonce gap " + nonce + " of " + sender + " failed: " + e);
+      nonceManager.complete(nonce);
+      AccountState state = aergoClient.getAccountOperation().getState(sender.getAddress());
+      nonceManager.resync(state.getNonce());
+    }
+  }
+
+  protected void bindOnce(final Sender sender) {
+    // bind nonce of a sender once
+    final NonceManager nonceManager = sender.getNonceManager();
+    if (!nonceManager.isBound()) {
+      synchronized (nonceManager) {
+        if (!nonceManager.isBound()) {
+          bindState(sender);
+        }
+      }
+    }
+  }
+
+  protected RawTransaction buildTransaction(final ChainIdHash chainIdHash, final Sender sender,
+      final AccountAddress recipient, final Aer amount, final long nonce) {
+    return RawTransaction.newBuilder()
+        .chainIdHash(chainIdHash)
+        .from(sender.getAddress())
+        .to(recipient)
+        .amount(amount)
+        .nonce(nonce)
+        .fee(Fee.EMPTY)
+        .build();
+  }
+
+  // a nonce is read from a node, a cached one may be a block behind
+  protected void bindState(final Sender sender) {
     AccountState state = aergoClient.getAccountOperation()
-        .getState(richKey.getAddress());
-    nonceProvider.bindNonce(state);
+        .getState(sender.getAddress());
+    sender.getNonceManager().bind(state.getNonce());
+  }
+
+  protected static ThreadFactory daemon(final String name) {
+    final AtomicInteger count = new AtomicInteger(0);
+    return r -> {
+      Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
   }
 
 }
@@ -0,0 +1,350 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import hera.api.model.AccountAddress;
+import hera.api.model.BytesValue;
+import hera.api.model.TxHash;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * An append-only journal of submitted transactions on memory-mapped segment files. An append is
+ * a copy into a mapped buffer and a flusher forces appends of an interval at once (group commit).
+ * Transactions not resolved yet are kept in memory and copied into a new segment on rollover, so
+ * that an old segment can be deleted. They are kept in memory even if disabled, for a handoff on
+ * shutdown.
+ *
+ * <p>A record is {@code [length][type][hash length][hash][sender length][sender][nonce][crc32]}.
+ * Reading stops at a zero length or a crc mismatch, which is a torn write on crash.
+ */
+@Component
+class TxJournal {
+
+  static final byte SUBMITTED = 1;
+  static final byte CONFIRMED = 2;
+  static final byte FAILED = 3;
+  static final byte EXPIRED = 4;
+
+  protected static final String PREFIX = "journal-";
+  protected static final String SUFFIX = ".log";
+
+  @Value("${aergo.journal.enabled:true}")
+  protected boolean enabled;
+
+  @Value("${aergo.journal.directory:journal}")
+  protected String directory;
+
+  @Value("${aergo.journal.segment-size:67108864}")
+  protected int segmentSize;
+
+  // group commit interval (ms)
+  @Value("${aergo.journal.flush-interval:10}")
+  protected long flushInterval;
+
+  // if true, a submission waits for its record to be flushed before commit
+  @Value("${aergo.journal.sync:false}")
+  protected boolean sync;
+
+  // tx hash -> submitted record, guarded by this
+  protected final Map<ByteBuffer, Record> unresolved = new LinkedHashMap<>();
+
+  // guarded by this
+  protected long segmentSequence;
+  protected MappedByteBuffer segment;
+
+  // appended and flushed positions over all segments, guarded by flushLock
+  protected final Object flushLock = new Object();
+  protected long appended = 0L;
+  protected long flushed = 0L;
+
+  protected ScheduledExecutorService flusher;
+
+  @PostConstruct
+  protected void init() throws IOException {
+    if (!enabled) {
+      return;
+    }
+    final File dir = new File(directory);
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot make journal directory " + dir.getAbsolutePath());
+    }
+
+    // replay every segment, then start a new one with unresolved records only
+    final File[] olds = listSegments();
+    for (final File old : olds) {
+      read(old);
+      segmentSequence = Math.max(segmentSequence, sequenceOf(old));
+    }
+    synchronized (this) {
+      roll();
+    }
+
+    flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "tx-journal-flusher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    if (null != flusher) {
+      flusher.shutdownNow();
+      flush();
+    }
+  }
+
+  /**
+   * Get records submitted but not resolved.
+   *
+   * @return unresolved records in submission order
+   */
+  synchronized List<Record> getUnresolved() {
+    return new ArrayList<>(unresolved.values());
+  }
+
+  synchronized boolean isUnresolved(final TxHash txHash) {
+    return unresolved.containsKey(ByteBuffer.wrap(txHash.getBytesValue().getValue()));
+  }
+
+  /**
+   * Append a submission. With sync, it returns after the record is flushed.
+   *
+   * @param txHash a tx hash
+   * @param sender a sender address
+   * @param nonce a nonce
+   */
+  void submitted(final TxHash txHash, final AccountAddress sender, final long nonce) {
+    final Record record = new Record(SUBMITTED, txHash.getBytesValue().getValue(),
+        sender.getBytesValue().getValue(), nonce);
+    long position = 0L;
+    synchronized (this) {
+      if (enabled) {
+        position = append(record);
+      }
+      unresolved.put(ByteBuffer.wrap(record.hash), record);
+    }
+    if (enabled && sync) {
+      awaitFlush(position);
+    }
+  }
+
+  /**
+   * Append a resolution of a submission. It's never waited for since a lost one is resolved
+   * again on replay.
+   *
+   * @param txHash a tx hash
+   * @param type one of {@link #CONFIRMED}, {@link #FAILED} and {@link #EXPIRED}
+   */
+  void resolved(final TxHash txHash, final byte type) {
+    final byte[] hash = txHash.getBytesValue().getValue();
+    synchronized (this) {
+      if (null != unresolved.remove(ByteBuffer.wrap(hash)) && enabled) {
+        append(new Record(type, hash, new byte[0], 0L));
+      }
+    }
+  }
+
+  // guarded by this
+  protected long append(final Record record) {
+    final byte[] bytes = record.encode();
+    if (segment.remaining() < bytes.length + Integer.BYTES) {
+      roll();
+    }
+    segment.put(bytes);
+    synchronized (flushLock) {
+      appended += bytes.length;
+      return appended;
+    }
+  }
+
+  // start a new segment holding unresolved records and delete older ones, guarded by this
+  protected void roll() {
+    if (null != segment) {
+      segment.force();
+    }
+    final File next = new File(directory, PREFIX + String.format("%016d", ++segmentSequence)
+        + SUFFIX);
+    int required = Integer.BYTES;
+    for (final Record record : unresolved.values()) {
+      required += record.encode().length;
+    }
+    try (RandomAccessFile file = new RandomAccessFile(next, "rw")) {
+      file.setLength(Math.max(segmentSize, required * 2));
+      segment = file.getChannel().map(MapMode.READ_WRITE, 0L, file.length());
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot make journal segment " + next, e);
+    }
+    for (final Record record : unresolved.values()) {
+      segment.put(record.encode());
+    }
+    segment.force();
+
+    for (final File old : listSegments()) {
+      if (sequenceOf(old) < segmentSequence && !old.delete()) {
+        System.err.println("Cannot delete journal segment " + old);
+      }
+    }
+  }
+
+  protected void flush() {
+    final MappedByteBuffer current;
+    final long target;
+    synchronized (this) {
+      current = segment;
+      synchronized (flushLock) {
+        target = appended;
+        if (target == flushed) {
+          return;
+        }
+      }
+    }
+    try {
+      current.force();
+    } catch (Exception e) {
+      System.err.println("Flushing journal failed: " + e);
+      return;
+    }
+    synchronized (flushLock) {
+      flushed = Math.max(flushed, target);
+      flushLock.notifyAll();
+    }
+  }
+
+  protected void awaitFlush(final long position) {
+    synchronized (flushLock) {
+      while (flushed < position) {
+        try {
+          flushLock.wait(flushInterval);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  protected void read(final File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      final MappedByteBuffer buffer = raf.getChannel()
+          .map(MapMode.READ_ONLY, 0L, raf.length());
+      Record record;
+      while (null != (record = Record.decode(buffer))) {
+        if (SUBMITTED == record.type) {
+          unresolved.put(ByteBuffer.wrap(record.hash), record);
+        } else {
+          unresolved.remove(ByteBuffer.wrap(record.hash));
+        }
+      }
+    }
+  }
+
+  protected File[] listSegments() {
+    final File[] files = new File(directory)
+        .listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+    if (null == files) {
+      return new File[0];
+    }
+    Arrays.sort(files);
+    return files;
+  }
+
+  protected static long sequenceOf(final File file) {
+    final String name = file.getName();
+    return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+  }
+
+  /**
+   * A journal record.
+   */
+  static class Record {
+
+    protected final byte type;
+    protected final byte[] hash;
+    protected final byte[] sender;
+    protected final long nonce;
+
+    Record(final byte type, final byte[] hash, final byte[] sender, final long nonce) {
+      this.type = type;
+      this.hash = hash;
+      this.sender = sender;
+      this.nonce = nonce;
+    }
+
+    TxHash getTxHash() {
+      return TxHash.of(BytesValue.of(hash));
+    }
+
+    AccountAddress getSender() {
+      return AccountAddress.of(BytesValue.of(sender));
+    }
+
+    long getNonce() {
+      return nonce;
+    }
+
+    protected byte[] encode() {
+      final int length = 1 + Short.BYTES + hash.length + Short.BYTES + sender.length + Long.BYTES;
+      final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + length + Integer.BYTES);
+      buffer.putInt(length);
+      buffer.put(type);
+      buffer.putShort((short) hash.length).put(hash);
+      buffer.putShort((short) sender.length).put(sender);
+      buffer.putLong(nonce);
+      final CRC32 crc = new CRC32();
+      crc.update(buffer.array(), Integer.BYTES, length);
+      buffer.putInt((int) crc.getValue());
+      return buffer.array();
+    }
+
+    // null on end or a torn record
+    protected static Record decode(final ByteBuffer buffer) {
+      if (buffer.remaining() < Integer.BYTES) {
+        return null;
+      }
+      final int start = buffer.position();
+      final int length = buffer.getInt();
+      if (length <= 0 || buffer.remaining() < length + Integer.BYTES) {
+        return null;
+      }
+      final byte[] body = new byte[length];
+      buffer.get(body);
+      final CRC32 crc = new CRC32();
+      crc.update(body, 0, length);
+      if ((int) crc.getValue() != buffer.getInt()) {
+        System.err.println("Journal record at " + start + " is torn, stop reading");
+        return null;
+      }
+      final ByteBuffer wrapped = ByteBuffer.wrap(body);
+      final byte type = wrapped.get();
+      final byte[] hash = new byte[wrapped.getShort()];
+      wrapped.get(hash);
+      final byte[] sender = new byte[wrapped.getShort()];
+      wrapped.get(sender);
+      return new Record(type, hash, sender, wrapped.getLong());
+    }
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream;
+
+import hera.api.model.BlockHash;
+import hera.api.model.Transaction;
+import java.util.List;
+
+/**
+ * A listener notified on every processed block. It's called in a block order on a single thread,
+ * so it should not block.
+ */
+public interface BlockListener {
+
+  /**
+   * Called after a block is processed.
+   *
+   * @param height a block height
+   * @param hash a block hash
+   */
+  void onBlock(long height, BlockHash hash);
+
+  /**
+   * Whether to be notified of transactions of a block. If any listener requires them, a block
+   * stream fetches a block body even in a metadata mode, on a listener thread before notifying
+   * the block, so a later notification waits for it.
+   *
+   * @return true to receive {@link #onTransactions(long, List)}
+   */
+  default boolean requiresTransactions() {
+    return false;
+  }
+
+  /**
+   * Called with transactions of a block just before {@link #onBlock(long, BlockHash)} of the
+   * block, only if {@link #requiresTransactions()} is true.
+   *
+   * @param height a block height
+   * @param transactions transactions in a block, null if they could not be fetched
+   */
+  default void onTransactions(long height, List<Transaction> transactions) {
+  }
+
+}
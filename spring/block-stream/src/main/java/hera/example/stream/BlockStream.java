@@ -4,19 +4,40 @@
 
 package hera.example.stream;
 
+import hera.api.model.BlockHash;
 import hera.api.model.TxHash;
 import java.util.concurrent.CompletableFuture;
 
 public interface BlockStream {
 
   /**
-   * Submit transaction hash to block stream.
+   * Submit transaction hash to block stream with a default confirmation.
    *
    * @param txHash a transaction hash
    * @return a CompletableFuture which complete after transaction with {@code txHash} is confirmed.
    */
   CompletableFuture<TxHash> submit(TxHash txHash);
 
+  /**
+   * Submit transaction hash to block stream. If a block including it is replaced before
+   * confirmation, it waits for a transaction to be included again. If a stream is closed before
+   * confirmation, a future completes with {@link java.util.concurrent.CancellationException}.
+   *
+   * @param txHash a transaction hash
+   * @param confirmation a condition to be confirmed
+   * @return a CompletableFuture which complete after transaction with {@code txHash} is confirmed.
+   */
+  CompletableFuture<TxHash> submit(TxHash txHash, Confirmation confirmation);
+
+  /**
+   * Submit transaction hash to block stream with a default confirmation, getting a height of a
+   * block including it. A caller can read its own write from a node at or above the height.
+   *
+   * @param txHash a transaction hash
+   * @return a CompletableFuture of an inclusion height which completes on confirmation
+   */
+  CompletableFuture<Long> submitForHeight(TxHash txHash);
+
   /**
    * Unsubmit submmited transaction hash.
    *
@@ -24,4 +45,57 @@ public interface BlockStream {
    * @return unsubmit result
    */
   boolean unsubmit(TxHash txHash);
+
+  /**
+   * Add a listener notified on every processed block. It starts a subscription if not started.
+   *
+   * @param listener a listener to add
+   */
+  void addListener(BlockListener listener);
+
+  /**
+   * Get the number of transaction hashes waiting for confirmation, included or not.
+   *
+   * @return a pending count
+   */
+  int getPendingCount();
+
+  /**
+   * Get the number of submissions evicted since they're not confirmed in time.
+   *
+   * @return an expired count
+   */
+  long getExpiredCount();
+
+  /**
+   * Get the number of submissions rejected since pending registry was full.
+   *
+   * @return a rejected count
+   */
+  long getRejectedCount();
+
+  /**
+   * Get the highest height of blocks including a confirmed submission. It's updated before a
+   * future of submission completes.
+   *
+   * @return a confirmed height
+   */
+  long getConfirmedHeight();
+
+  /**
+   * Get a last irreversible block height, refreshed along blocks.
+   *
+   * @return a lib height, 0 if not known yet
+   */
+  long getLibHeight();
+
+  /**
+   * Get a height of a block among recently processed ones, which are in a reorg window. It's
+   * answered without calling a node or waiting for a block being processed.
+   *
+   * @param hash a block hash
+   * @return a block height, 0 if not among recent blocks
+   */
+  long getRecentHeight(BlockHash hash);
+
 }
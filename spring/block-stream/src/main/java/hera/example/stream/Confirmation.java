@@ -0,0 +1,66 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream;
+
+/**
+ * A condition for submitted transaction to be treated as confirmed.
+ */
+public final class Confirmation {
+
+  /**
+   * Confirmed as soon as included in a block. It's not protected from block replacement.
+   */
+  public static final Confirmation INCLUDED = new Confirmation(1, false);
+
+  /**
+   * Confirmed when a block including it becomes irreversible (LIB).
+   */
+  public static final Confirmation IRREVERSIBLE = new Confirmation(1, true);
+
+  /**
+   * Make a confirmation requiring {@code depth} blocks including the block of transaction.
+   *
+   * @param depth a number of blocks, 1 means just included
+   * @return a confirmation
+   */
+  public static Confirmation of(final int depth) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+    }
+    return 1 == depth ? INCLUDED : new Confirmation(depth, false);
+  }
+
+  protected final int depth;
+
+  protected final boolean irreversible;
+
+  private Confirmation(final int depth, final boolean irreversible) {
+    this.depth = depth;
+    this.irreversible = irreversible;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  public boolean isIrreversible() {
+    return irreversible;
+  }
+
+  /**
+   * Check if it can be completed on inclusion.
+   *
+   * @return true if completes on inclusion
+   */
+  public boolean isImmediate() {
+    return 1 == depth && !irreversible;
+  }
+
+  @Override
+  public String toString() {
+    return irreversible ? "Confirmation{irreversible}" : "Confirmation{depth=" + depth + "}";
+  }
+
+}
@@ -0,0 +1,613 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream.internal;
+
+import hera.api.model.Block;
+import hera.api.model.BlockHash;
+import hera.api.model.StreamObserver;
+import hera.api.model.Subscription;
+import hera.api.model.Transaction;
+import hera.api.model.TxHash;
+import hera.client.AergoClient;
+import hera.example.stream.BlockListener;
+import hera.example.stream.BlockStream;
+import hera.example.stream.Confirmation;
+import hera.example.stream.internal.PendingRegistry.Entry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * A base of block stream. It keeps a subscription alive with backoff and fills a gap on
+ * reconnection. Subclasses decide what to subscribe and how to match pending transactions.
+ *
+ * @param <T> a type of streamed value
+ */
+abstract class AbstractBlockStream<T> implements BlockStream {
+
+  // consensus info is a json like {"Type":"dpos","Status":{...,"LibNo":123,...}}
+  protected static final Pattern LIB_PATTERN = Pattern.compile("\"LibNo\"\\s*:\\s*(\\d+)");
+
+  @Value("${aergo.stream.pending.capacity:100000}")
+  protected int pendingCapacity;
+
+  @Value("${aergo.stream.pending.timeout:60000}")
+  protected long pendingTimeout;
+
+  @Value("${aergo.stream.pending.tick:100}")
+  protected long pendingTick;
+
+  @Value("${aergo.stream.reconnect.initial-backoff:500}")
+  protected long initialBackoff;
+
+  @Value("${aergo.stream.reconnect.max-backoff:30000}")
+  protected long maxBackoff;
+
+  @Value("${aergo.stream.backfill.batch:16}")
+  protected int backfillBatch;
+
+  @Value("${aergo.stream.backfill.max:10000}")
+  protected long maxBackfill;
+
+  @Value("${aergo.stream.confirmation.depth:1}")
+  protected int defaultDepth;
+
+  @Value("${aergo.stream.confirmation.irreversible:false}")
+  protected boolean defaultIrreversible;
+
+  // refresh lib every this number of blocks even if no entry waits for it
+  @Value("${aergo.stream.confirmation.lib-refresh-interval:10}")
+  protected long libRefreshInterval;
+
+  @Value("${aergo.stream.reorg.window:256}")
+  protected int reorgWindow;
+
+  protected Confirmation defaultConfirmation;
+
+  protected PendingRegistry pendingRegistry;
+
+  // changed under this, and read by others with its own lock
+  protected RecentBlocks recentBlocks;
+
+  // guarded by this
+  protected ConfirmationTracker confirmationTracker;
+
+  protected volatile long libHeight = 0L;
+
+  // height of a block on which lib is refreshed last, guarded by this
+  protected long libRefreshedHeight = 0L;
+
+  protected final List<BlockListener> listeners = new CopyOnWriteArrayList<>();
+
+  protected ScheduledExecutorService reconnector;
+
+  protected ExecutorService fetcher;
+
+  // completes futures off the transport thread
+  protected ExecutorService completer;
+
+  // calls a node for a lib off a stream thread
+  protected ExecutorService libRefresher;
+
+  protected final AtomicBoolean libRefreshing = new AtomicBoolean(false);
+
+  protected final Object lock = new Object();
+  protected volatile Subscription<T> subscription;
+
+  // height of last processed block, 0 if nothing processed yet
+  protected volatile long lastHeight = 0L;
+
+  // highest inclusion height of completed entries
+  protected final AtomicLong confirmedHeight = new AtomicLong(0L);
+
+  protected volatile long backoff;
+  protected volatile boolean reconnecting = false;
+  protected volatile boolean closed = false;
+
+  @Autowired
+  protected AergoClient client;
+
+  @Autowired
+  protected MeterRegistry meterRegistry;
+
+  protected Timer confirmationTimer;
+
+  protected Timer blockLagTimer;
+
+  protected Counter backfilledBlocks;
+
+  @PostConstruct
+  protected void init() {
+    defaultConfirmation = defaultIrreversible ? Confirmation.IRREVERSIBLE
+        : Confirmation.of(defaultDepth);
+    recentBlocks = new RecentBlocks(reorgWindow);
+    confirmationTracker = new ConfirmationTracker();
+    // included ones waiting for depth or lib hold a capacity too
+    pendingRegistry = new PendingRegistry(pendingCapacity, pendingTimeout, pendingTick,
+        confirmationTracker::size);
+    reconnector = Executors.newSingleThreadScheduledExecutor(daemon("block-stream-reconnect"));
+    fetcher = Executors.newFixedThreadPool(backfillBatch, daemon("block-stream-fetch"));
+    completer = Executors.newSingleThreadExecutor(daemon("block-stream-complete"));
+    libRefresher = Executors.newSingleThreadExecutor(daemon("block-stream-lib"));
+    backoff = initialBackoff;
+
+    confirmationTimer = Timer.builder("aergo.stream.confirmation")
+        .description("Time from submit to confirmation")
+        .register(meterRegistry);
+    blockLagTimer = Timer.builder("aergo.stream.block.lag")
+        .description("Time from block creation to its arrival")
+        .register(meterRegistry);
+    Gauge.builder("aergo.stream.pending", this, AbstractBlockStream::getPendingCount)
+        .description("Submissions waiting for confirmation")
+        .register(meterRegistry);
+    backfilledBlocks = Counter.builder("aergo.stream.backfilled")
+        .description("Blocks fetched to fill a gap of a stream")
+        .register(meterRegistry);
+    FunctionCounter.builder("aergo.stream.expired", pendingRegistry,
+        PendingRegistry::getExpiredCount)
+        .description("Submissions not confirmed in time")
+        .register(meterRegistry);
+    FunctionCounter.builder("aergo.stream.rejected", pendingRegistry,
+        PendingRegistry::getRejectedCount)
+        .description("Submissions rejected since pending registry was full")
+        .register(meterRegistry);
+  }
+
+  @PreDestroy
+  protected void destroy() {
+    closed = true;
+    reconnector.shutdownNow();
+    fetcher.shutdownNow();
+    libRefresher.shutdownNow();
+    completer.shutdown();
+    if (null != subscription) {
+      subscription.unsubscribe();
+    }
+    final List<Entry> included;
+    synchronized (this) {
+      included = confirmationTracker.clear();
+    }
+    pendingRegistry.close(included);
+  }
+
+  @Override
+  public CompletableFuture<TxHash> submit(TxHash txHash) {
+    return submit(txHash, defaultConfirmation);
+  }
+
+  @Override
+  public CompletableFuture<TxHash> submit(TxHash txHash, Confirmation confirmation) {
+    ensureSubscribed();
+
+    // make a non-completed future and keep it until confirmed or expired
+    return pendingRegistry.register(txHash, confirmation).future;
+  }
+
+  @Override
+  public CompletableFuture<Long> submitForHeight(TxHash txHash) {
+    ensureSubscribed();
+
+    // a height is set on inclusion before completion
+    final Entry entry = pendingRegistry.register(txHash, defaultConfirmation);
+    return entry.future.thenApply(hash -> entry.height);
+  }
+
+  @Override
+  public void addListener(BlockListener listener) {
+    listeners.add(listener);
+    ensureSubscribed();
+  }
+
+  @Override
+  public boolean unsubmit(TxHash txHash) {
+    return pendingRegistry.remove(txHash);
+  }
+
+  @Override
+  public int getPendingCount() {
+    return pendingRegistry.size() + confirmationTracker.size();
+  }
+
+  @Override
+  public long getExpiredCount() {
+    return pendingRegistry.getExpiredCount();
+  }
+
+  @Override
+  public long getRejectedCount() {
+    return pendingRegistry.getRejectedCount();
+  }
+
+  @Override
+  public long getConfirmedHeight() {
+    return confirmedHeight.get();
+  }
+
+  @Override
+  public long getLibHeight() {
+    return libHeight;
+  }
+
+  @Override
+  public long getRecentHeight(BlockHash hash) {
+    return recentBlocks.find(hash);
+  }
+
+  /**
+   * Subscribe a stream.
+   *
+   * @param observer an observer to receive streamed values
+   * @return a subscription
+   */
+  protected abstract Subscription<T> subscribe(StreamObserver<T> observer);
+
+  /**
+   * Fetch a value of a block at {@code height}. Used to fill a gap.
+   *
+   * @param height a block height
+   * @return a value of block
+   */
+  protected abstract T fetch(long height);
+
+  protected abstract long heightOf(T value);
+
+  protected abstract BlockHash hashOf(T value);
+
+  protected abstract BlockHash previousHashOf(T value);
+
+  // in unix nanos
+  protected abstract long timestampOf(T value);
+
+  /**
+   * Get transactions of a block for listeners requiring them. Called on a stream thread, while a
+   * returned supplier is called later on a completer thread, so a block body may be fetched there.
+   *
+   * @param value a value of block
+   * @return a supplier of transactions in a block
+   */
+  protected abstract Supplier<List<Transaction>> transactionsOf(T value);
+
+  /**
+   * Find pending transactions included in a block. Called without holding a stream lock, so that
+   * a node call for it blocks neither a submit nor a block being processed. A returned action
+   * passes them to {@link #include(List, long)} on processing a block under the lock.
+   *
+   * @param value a value of block
+   * @return an action to run on processing a block
+   */
+  protected abstract Runnable prepare(T value);
+
+  protected void ensureSubscribed() {
+    // make a subscription if it's in unsubscribed state and not reconnecting
+    if (!reconnecting && (null == subscription || subscription.isUnsubscribed())) {
+      synchronized (lock) {
+        if (!reconnecting && (null == subscription || subscription.isUnsubscribed())) {
+          subscription = makeNewSubscription();
+        }
+      }
+    }
+  }
+
+  private Subscription<T> makeNewSubscription() {
+    StreamObserver<T> streamObserver = new StreamObserver<T>() {
+
+      @Override
+      public void onNext(T value) {
+        backoff = initialBackoff;
+        final long lag = System.currentTimeMillis() * 1_000_000L - timestampOf(value);
+        if (lag > 0L) {
+          blockLagTimer.record(lag, TimeUnit.NANOSECONDS);
+        }
+        try {
+          onNewBlock(value);
+        } catch (Exception e) {
+          // left unprocessed blocks are filled on next block
+          System.err.println("Processing block failed: " + e);
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        System.err.println("Block stream error: " + t);
+        scheduleReconnect();
+      }
+
+      @Override
+      public void onCompleted() {
+        System.err.println("Block stream completed");
+        scheduleReconnect();
+      }
+    };
+    return subscribe(streamObserver);
+  }
+
+  protected void scheduleReconnect() {
+    if (closed) {
+      return;
+    }
+    synchronized (lock) {
+      if (reconnecting) {
+        return;
+      }
+      reconnecting = true;
+    }
+    final long delay = backoff;
+    backoff = Math.min(backoff * 2, maxBackoff);
+    System.err.println("Resubscribe block stream in " + delay + "ms");
+    reconnector.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+  }
+
+  protected void reconnect() {
+    synchronized (lock) {
+      reconnecting = false;
+      try {
+        if (null != subscription && !subscription.isUnsubscribed()) {
+          subscription.unsubscribe();
+        }
+        subscription = makeNewSubscription();
+      } catch (Exception e) {
+        System.err.println("Resubscribe failed: " + e);
+        scheduleReconnect();
+        return;
+      }
+    }
+
+    // fill a gap eagerly instead of waiting for a next block
+    try {
+      final long bestHeight = client.getBlockchainOperation().getBlockchainStatus()
+          .getBestHeight();
+      backfill(bestHeight + 1);
+    } catch (Exception e) {
+      System.err.println("Backfill on reconnect failed: " + e);
+    }
+  }
+
+  // blocks of a gap are fetched without holding this, so that a slow fetch blocks neither a
+  // submit nor a read of recent blocks
+  protected void onNewBlock(final T value) {
+    final long height = heightOf(value);
+    final Runnable matching = prepare(value);
+    while (true) {
+      backfill(height);
+      synchronized (this) {
+        if (0L != lastHeight) {
+          if (height <= lastHeight && hashOf(value).equals(recentBlocks.get(height))) {
+            // already processed one by backfill
+            return;
+          }
+          if (height <= lastHeight) {
+            rollback(findForkHeight(height, previousHashOf(value)));
+            continue;
+          }
+          // a parent may be filled just above, from a node on another branch
+          if (height > lastHeight + 1 || rollbackIfForked(value)) {
+            continue;
+          }
+        }
+        processAndMark(value, matching);
+        return;
+      }
+    }
+  }
+
+  // roll back if a parent of a block is not a processed one at its height
+  protected boolean rollbackIfForked(final T value) {
+    final long height = heightOf(value);
+    final BlockHash parent = recentBlocks.get(height - 1);
+    if (null == parent || parent.equals(previousHashOf(value))) {
+      return false;
+    }
+    rollback(findForkHeight(height, previousHashOf(value)));
+    return true;
+  }
+
+  // find a height of last block which is both in a ring and a canonical chain
+  protected long findForkHeight(final long height, final BlockHash parent) {
+    long candidate = Math.min(height - 1, lastHeight);
+    final long limit = Math.max(0L, lastHeight - recentBlocks.window());
+    while (candidate > limit) {
+      final BlockHash known = recentBlocks.get(candidate);
+      if (null == known) {
+        break;
+      }
+      final BlockHash canonical = (candidate == height - 1) ? parent
+          : hashOf(fetch(candidate));
+      if (known.equals(canonical)) {
+        break;
+      }
+      --candidate;
+    }
+    return candidate;
+  }
+
+  protected void rollback(final long forkHeight) {
+    System.err.println("Blocks after " + forkHeight + " are replaced, reopen included ones");
+    for (final Entry entry : confirmationTracker.rollback(forkHeight)) {
+      pendingRegistry.reopen(entry);
+    }
+    recentBlocks.truncate(forkHeight + 1);
+    lastHeight = forkHeight;
+  }
+
+  // process blocks in (lastHeight, toHeight) using batched fetch calls. A batch is fetched
+  // without holding this and processed under it only if it still follows a last block. A chain
+  // may be forked while disconnected, so each block is checked against a processed parent and a
+  // fork found is rolled back and filled again
+  protected void backfill(final long toHeight) {
+    while (true) {
+      final long from;
+      synchronized (this) {
+        if (0L == lastHeight || toHeight <= lastHeight + 1) {
+          return;
+        }
+        if (toHeight - (lastHeight + 1) > maxBackfill) {
+          System.err.println("Gap too big, skip blocks " + (lastHeight + 1) + " ~ "
+              + (toHeight - maxBackfill - 1));
+          lastHeight = toHeight - maxBackfill - 1;
+        }
+        from = lastHeight + 1;
+      }
+      final long end = Math.min(from + backfillBatch, toHeight);
+      final List<CompletableFuture<T>> batch = new ArrayList<>();
+      for (long height = from; height < end; ++height) {
+        final long target = height;
+        batch.add(CompletableFuture.supplyAsync(() -> fetch(target), fetcher));
+      }
+      final List<T> fetched = new ArrayList<>(batch.size());
+      final List<Runnable> matchings = new ArrayList<>(batch.size());
+      for (final CompletableFuture<T> each : batch) {
+        final T value = each.join();
+        fetched.add(value);
+        matchings.add(prepare(value));
+      }
+
+      synchronized (this) {
+        for (int i = 0; i < fetched.size(); ++i) {
+          final T value = fetched.get(i);
+          // moved by a stream or a rollback meanwhile, fetch again from a last block
+          if (heightOf(value) != lastHeight + 1 || rollbackIfForked(value)) {
+            break;
+          }
+          processAndMark(value, matchings.get(i));
+          backfilledBlocks.increment();
+        }
+      }
+    }
+  }
+
+  protected void processAndMark(final T value, final Runnable matching) {
+    matching.run();
+    final long height = heightOf(value);
+    recentBlocks.add(height, hashOf(value));
+    lastHeight = height;
+    if (confirmationTracker.isWaitingLib() || height < libRefreshedHeight
+        || height - libRefreshedHeight >= libRefreshInterval) {
+      refreshLibAsync();
+      libRefreshedHeight = height;
+    }
+    complete(confirmationTracker.settle(height, libHeight));
+    notifyListeners(value);
+  }
+
+  protected void match(final Block block) {
+    include(pendingRegistry.detachAll(block.getTransactions()),
+        block.getBlockHeader().getBlockNumber());
+  }
+
+  protected void include(final List<Entry> matched, final long height) {
+    if (!matched.isEmpty()) {
+      complete(confirmationTracker.include(matched, height));
+    }
+  }
+
+  protected void complete(final List<Entry> entries) {
+    if (!entries.isEmpty()) {
+      completer.execute(() -> entries.forEach(entry -> {
+        confirmedHeight.accumulateAndGet(entry.height, Math::max);
+        confirmationTimer.record(System.nanoTime() - entry.submittedNanos, TimeUnit.NANOSECONDS);
+        entry.complete();
+      }));
+    }
+  }
+
+  protected void notifyListeners(final T value) {
+    if (listeners.isEmpty()) {
+      return;
+    }
+    final long height = heightOf(value);
+    final BlockHash hash = hashOf(value);
+    Supplier<List<Transaction>> transactions = null;
+    for (final BlockListener listener : listeners) {
+      if (listener.requiresTransactions()) {
+        transactions = transactionsOf(value);
+        break;
+      }
+    }
+    final Supplier<List<Transaction>> supplier = transactions;
+    // a body is fetched off a stream thread, not to hold a next block
+    completer.execute(() -> {
+      List<Transaction> fetched = null;
+      if (null != supplier) {
+        try {
+          fetched = supplier.get();
+        } catch (Exception e) {
+          // listeners get null as unknown
+          System.err.println("Fetching transactions of block " + height + " failed: " + e);
+        }
+      }
+      for (final BlockListener listener : listeners) {
+        try {
+          if (null != supplier && listener.requiresTransactions()) {
+            listener.onTransactions(height, fetched);
+          }
+          listener.onBlock(height, hash);
+        } catch (Exception e) {
+          System.err.println("Block listener failed: " + e);
+        }
+      }
+    });
+  }
+
+  // refreshed off a stream thread, and ones waiting for a new lib are settled with it
+  protected void refreshLibAsync() {
+    if (!libRefreshing.compareAndSet(false, true)) {
+      return;
+    }
+    libRefresher.execute(() -> {
+      try {
+        refreshLibHeight();
+      } finally {
+        libRefreshing.set(false);
+      }
+      synchronized (this) {
+        complete(confirmationTracker.settle(lastHeight, libHeight));
+      }
+    });
+  }
+
+  protected void refreshLibHeight() {
+    try {
+      final String consensusInfo = client.getBlockchainOperation().getBlockchainStatus()
+          .getConsensusInfo();
+      final Matcher matcher = LIB_PATTERN.matcher(null != consensusInfo ? consensusInfo : "");
+      if (matcher.find()) {
+        libHeight = Long.parseLong(matcher.group(1));
+      }
+    } catch (Exception e) {
+      System.err.println("Refreshing lib failed: " + e);
+    }
+  }
+
+  protected static ThreadFactory daemon(final String name) {
+    final AtomicInteger count = new AtomicInteger(0);
+    return r -> {
+      Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+}
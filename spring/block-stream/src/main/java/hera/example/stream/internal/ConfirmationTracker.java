@@ -0,0 +1,147 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream.internal;
+
+import hera.example.stream.internal.PendingRegistry.Entry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Keeps entries included in a block until its confirmation condition is met. Not thread-safe
+ * except {@link #size()}, which may be read by any thread.
+ */
+class ConfirmationTracker {
+
+  // ready height (inclusion height + depth - 1) -> entries
+  protected final NavigableMap<Long, List<Included>> byReadyHeight = new TreeMap<>();
+
+  // inclusion height -> entries waiting for lib
+  protected final NavigableMap<Long, List<Included>> byLibHeight = new TreeMap<>();
+
+  // written by a single thread holding a stream lock
+  protected volatile int size = 0;
+
+  /**
+   * Include matched entries in a block.
+   *
+   * @param matched entries matched in a block
+   * @param height a block height
+   * @return entries to be completed immediately
+   */
+  List<Entry> include(final List<Entry> matched, final long height) {
+    final List<Entry> immediate = new ArrayList<>();
+    for (final Entry entry : matched) {
+      entry.height = height;
+      if (entry.confirmation.isImmediate()) {
+        immediate.add(entry);
+      } else if (entry.confirmation.isIrreversible()) {
+        add(byLibHeight, height, new Included(entry, height));
+      } else {
+        add(byReadyHeight, height + entry.confirmation.getDepth() - 1,
+            new Included(entry, height));
+      }
+    }
+    return immediate;
+  }
+
+  /**
+   * Pop entries whose condition is met.
+   *
+   * @param tipHeight a height of current best block
+   * @param libHeight a height of last irreversible block
+   * @return entries to be completed
+   */
+  List<Entry> settle(final long tipHeight, final long libHeight) {
+    final List<Entry> ready = new ArrayList<>();
+    drain(byReadyHeight.headMap(tipHeight, true), ready);
+    drain(byLibHeight.headMap(libHeight, true), ready);
+    return ready;
+  }
+
+  /**
+   * Remove entries included after {@code forkHeight}.
+   *
+   * @param forkHeight a height of last common block
+   * @return entries to be reopened
+   */
+  List<Entry> rollback(final long forkHeight) {
+    final List<Entry> reopened = new ArrayList<>();
+    rollback(byReadyHeight, forkHeight, reopened);
+    rollback(byLibHeight, forkHeight, reopened);
+    return reopened;
+  }
+
+  /**
+   * Remove all entries.
+   *
+   * @return removed entries
+   */
+  List<Entry> clear() {
+    final List<Entry> removed = new ArrayList<>();
+    drain(byReadyHeight, removed);
+    drain(byLibHeight, removed);
+    return removed;
+  }
+
+  boolean isWaitingLib() {
+    return !byLibHeight.isEmpty();
+  }
+
+  int size() {
+    return size;
+  }
+
+  protected void add(final NavigableMap<Long, List<Included>> target, final long key,
+      final Included included) {
+    target.computeIfAbsent(key, k -> new ArrayList<>()).add(included);
+    ++size;
+  }
+
+  protected void drain(final Map<Long, List<Included>> ready, final List<Entry> collector) {
+    final Iterator<List<Included>> it = ready.values().iterator();
+    while (it.hasNext()) {
+      for (final Included included : it.next()) {
+        collector.add(included.entry);
+        --size;
+      }
+      it.remove();
+    }
+  }
+
+  protected void rollback(final NavigableMap<Long, List<Included>> target, final long forkHeight,
+      final List<Entry> collector) {
+    final Iterator<List<Included>> it = target.values().iterator();
+    while (it.hasNext()) {
+      final List<Included> includeds = it.next();
+      includeds.removeIf(included -> {
+        if (included.height > forkHeight) {
+          collector.add(included.entry);
+          --size;
+          return true;
+        }
+        return false;
+      });
+      if (includeds.isEmpty()) {
+        it.remove();
+      }
+    }
+  }
+
+  protected static class Included {
+
+    protected final Entry entry;
+    protected final long height;
+
+    Included(final Entry entry, final long height) {
+      this.entry = entry;
+      this.height = height;
+    }
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream.internal;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timer wheel. Scheduling and cancelling are O(1) and expiration is done by a single
+ * ticker thread, so it can hold a lot of timeouts without a priority queue.
+ */
+class HashedTimerWheel {
+
+  protected final long tickNanos;
+  protected final int mask;
+  protected final Queue<Timeout>[] buckets;
+  protected final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+  protected final long startNanos = System.nanoTime();
+  protected final ScheduledExecutorService ticker;
+
+  // only accessed by ticker thread
+  protected long tick = 0L;
+
+  @SuppressWarnings("unchecked")
+  HashedTimerWheel(final String name, final long tickMillis, final int wheelSize) {
+    if (tickMillis <= 0L) {
+      throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+    }
+    if (wheelSize <= 0 || 0 != (wheelSize & (wheelSize - 1))) {
+      throw new IllegalArgumentException("Wheel size must be power of 2: " + wheelSize);
+    }
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.mask = wheelSize - 1;
+    this.buckets = new Queue[wheelSize];
+    for (int i = 0; i < wheelSize; ++i) {
+      this.buckets[i] = new ArrayDeque<>();
+    }
+    this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, name);
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Schedule a task to be run after {@code delayMillis}.
+   *
+   * @param task a task to run on expiration
+   * @param delayMillis a delay in milliseconds
+   * @return a timeout which can be cancelled
+   */
+  Timeout schedule(final Runnable task, final long delayMillis) {
+    long elapsed = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    Timeout timeout = new Timeout(task, (elapsed + tickNanos - 1) / tickNanos);
+    newTimeouts.add(timeout);
+    return timeout;
+  }
+
+  void stop() {
+    ticker.shutdownNow();
+  }
+
+  protected void advance() {
+    try {
+      transferNewTimeouts();
+      Iterator<Timeout> it = buckets[(int) (tick & mask)].iterator();
+      while (it.hasNext()) {
+        Timeout timeout = it.next();
+        if (timeout.cancelled) {
+          it.remove();
+        } else if (timeout.remainingRounds <= 0L) {
+          it.remove();
+          timeout.expire();
+        } else {
+          --timeout.remainingRounds;
+        }
+      }
+      ++tick;
+    } catch (Throwable e) {
+      // never let ticker die
+      System.err.println("Timer wheel tick failed: " + e);
+    }
+  }
+
+  protected void transferNewTimeouts() {
+    Timeout timeout;
+    while (null != (timeout = newTimeouts.poll())) {
+      if (timeout.cancelled) {
+        continue;
+      }
+      long target = Math.max(timeout.deadlineTick, tick);
+      timeout.remainingRounds = (target - tick) / buckets.length;
+      buckets[(int) (target & mask)].add(timeout);
+    }
+  }
+
+  static class Timeout {
+
+    protected final Runnable task;
+    protected final long deadlineTick;
+    protected long remainingRounds;
+    protected volatile boolean cancelled = false;
+
+    Timeout(final Runnable task, final long deadlineTick) {
+      this.task = task;
+      this.deadlineTick = deadlineTick;
+    }
+
+    void cancel() {
+      cancelled = true;
+    }
+
+    protected void expire() {
+      try {
+        task.run();
+      } catch (Throwable e) {
+        System.err.println("Timeout task failed: " + e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream.internal;
+
+import static java.util.Collections.emptyList;
+
+import hera.api.model.Block;
+import hera.api.model.BlockHash;
+import hera.api.model.BlockMetadata;
+import hera.api.model.StreamObserver;
+import hera.api.model.Subscription;
+import hera.api.model.Transaction;
+import hera.api.model.TxHash;
+import hera.api.model.TxReceipt;
+import hera.example.stream.internal.PendingRegistry.Entry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * A block stream which subscribes block headers only. A receipt of each pending transaction is
+ * looked up only when a few are pending compared to transactions in a block, so that lookups cost
+ * clearly less than one body fetch. Otherwise, or if a lookup fails other than not found, a block
+ * body is fetched.
+ *
+ * <p>A listener requiring transactions, like an account state cache or a query cache
+ * invalidator, makes a body fetched for every block with transactions, which cancels a saving of
+ * this mode. Disable them with this mode to save bandwidth.
+ */
+@Component
+@ConditionalOnProperty(name = "aergo.stream.mode", havingValue = "metadata")
+class MetadataBlockStreamImpl extends AbstractBlockStream<BlockMetadata> {
+
+  // max number of pending transactions to lookup receipts instead of fetching a block body
+  @Value("${aergo.stream.metadata.receipt-lookup-limit:8}")
+  protected int receiptLookupLimit;
+
+  // min number of transactions in a block per receipt lookup, one lookup costing about a body
+  // fetch of this many transactions
+  @Value("${aergo.stream.metadata.txs-per-receipt-lookup:16}")
+  protected long txsPerReceiptLookup;
+
+  // a body fetched on processing to be reused for listeners, guarded by this
+  protected Block lastBody;
+
+  @Override
+  protected Subscription<BlockMetadata> subscribe(final StreamObserver<BlockMetadata> observer) {
+    return client.getBlockOperation().subscribeBlockMetadata(observer);
+  }
+
+  @Override
+  protected BlockMetadata fetch(final long height) {
+    return client.getBlockOperation().getBlockMetadata(height);
+  }
+
+  @Override
+  protected long heightOf(final BlockMetadata metadata) {
+    return metadata.getBlockHeader().getBlockNumber();
+  }
+
+  @Override
+  protected BlockHash hashOf(final BlockMetadata metadata) {
+    return metadata.getBlockHash();
+  }
+
+  @Override
+  protected BlockHash previousHashOf(final BlockMetadata metadata) {
+    return metadata.getBlockHeader().getPreviousHash();
+  }
+
+  @Override
+  protected long timestampOf(final BlockMetadata metadata) {
+    return metadata.getBlockHeader().getTimestamp();
+  }
+
+  @Override
+  protected Supplier<List<Transaction>> transactionsOf(final BlockMetadata metadata) {
+    if (0L == metadata.getTxCount()) {
+      return () -> emptyList();
+    }
+    // taken here, a next block replaces a body used for matching
+    final Block body = lastBody;
+    if (null != body && body.getHash().equals(metadata.getBlockHash())) {
+      return body::getTransactions;
+    }
+    return () -> client.getBlockOperation().getBlock(metadata.getBlockHash()).getTransactions();
+  }
+
+  @Override
+  protected Runnable prepare(final BlockMetadata metadata) {
+    final long txCount = metadata.getTxCount();
+    final int pendingCount = pendingRegistry.size();
+    if (0L == txCount || 0 == pendingCount) {
+      return () -> lastBody = null;
+    }
+
+    if (pendingCount <= receiptLookupLimit && pendingCount * txsPerReceiptLookup <= txCount) {
+      final List<TxHash> included = lookupReceipts(metadata);
+      if (null != included) {
+        final long height = heightOf(metadata);
+        return () -> {
+          lastBody = null;
+          final List<Entry> matched = new ArrayList<>(included.size());
+          for (final TxHash txHash : included) {
+            final Entry entry = pendingRegistry.detach(txHash);
+            if (null != entry) {
+              matched.add(entry);
+            }
+          }
+          include(matched, height);
+        };
+      }
+    }
+    final Block body = client.getBlockOperation().getBlock(metadata.getBlockHash());
+    return () -> {
+      lastBody = body;
+      match(body);
+    };
+  }
+
+  /**
+   * Look up receipts of pending transactions in parallel.
+   *
+   * @param metadata a block metadata
+   * @return hashes of ones included in a block, null if a lookup failed other than not found,
+   *     since a failed one may be included and a body is fetched instead
+   */
+  protected List<TxHash> lookupReceipts(final BlockMetadata metadata) {
+    final List<TxHash> txHashes = pendingRegistry.snapshot();
+    final List<CompletableFuture<TxReceipt>> lookups = new ArrayList<>();
+    for (final TxHash txHash : txHashes) {
+      lookups.add(CompletableFuture.supplyAsync(
+          () -> client.getTransactionOperation().getTxReceipt(txHash), fetcher));
+    }
+
+    final List<TxHash> included = new ArrayList<>();
+    for (int i = 0; i < txHashes.size(); ++i) {
+      final TxReceipt receipt;
+      try {
+        receipt = lookups.get(i).join();
+      } catch (CompletionException e) {
+        if (isNotFound(e.getCause())) {
+          // not in a block yet
+          continue;
+        }
+        System.err.println("Looking up a receipt of " + txHashes.get(i)
+            + " failed, fetch a block body instead: " + e.getCause());
+        return null;
+      }
+      // one in another block, like a replaced one of a same height, is not of this block
+      if (null != receipt && metadata.getBlockHash().equals(receipt.getBlockHash())) {
+        included.add(txHashes.get(i));
+      }
+    }
+    return included;
+  }
+
+  // heraj wraps grpc errors, so find a grpc status in a cause chain
+  protected static boolean isNotFound(final Throwable e) {
+    Throwable cause = e;
+    for (int depth = 0; null != cause && depth < 8; ++depth) {
+      if (cause.getClass().getName().startsWith("io.grpc.Status")
+          && String.valueOf(cause.getMessage()).startsWith("NOT_FOUND")) {
+        return true;
+      }
+      cause = cause.getCause();
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream.internal;
+
+import hera.api.model.Transaction;
+import hera.api.model.TxHash;
+import hera.example.stream.Confirmation;
+import hera.example.stream.internal.HashedTimerWheel.Timeout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * A capacity-bounded registry of transaction hashes waiting for confirmation. Each entry has a
+ * deadline and is completed exceptionally with {@link TimeoutException} once it's passed. Entries
+ * detached on inclusion and still waiting for confirmation elsewhere count against a capacity.
+ */
+class PendingRegistry {
+
+  protected final int capacity;
+  protected final long timeoutMillis;
+  protected final HashedTimerWheel timerWheel;
+
+  // number of detached entries not completed yet
+  protected final IntSupplier detachedCount;
+
+  // guarded by itself
+  protected final TxHashIndex<Entry> index;
+
+  protected final AtomicLong expiredCount = new AtomicLong(0L);
+  protected final AtomicLong rejectedCount = new AtomicLong(0L);
+
+  PendingRegistry(final int capacity, final long timeoutMillis, final long tickMillis) {
+    this(capacity, timeoutMillis, tickMillis, () -> 0);
+  }
+
+  PendingRegistry(final int capacity, final long timeoutMillis, final long tickMillis,
+      final IntSupplier detachedCount) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.timeoutMillis = timeoutMillis;
+    this.detachedCount = detachedCount;
+    this.timerWheel = new HashedTimerWheel("pending-registry-timer", tickMillis, 512);
+    this.index = new TxHashIndex<>(Math.min(capacity, 1 << 16));
+  }
+
+  /**
+   * Register a transaction hash.
+   *
+   * @param txHash a transaction hash
+   * @param confirmation a condition to be confirmed
+   * @return an entry of which future completes on {@link Entry#complete()} or expiration
+   * @throws IllegalStateException if registry is full with detached entries or hash is already
+   *     registered
+   */
+  Entry register(final TxHash txHash, final Confirmation confirmation) {
+    final Entry entry = new Entry(txHash, confirmation);
+    synchronized (index) {
+      if (index.size() + detachedCount.getAsInt() >= capacity) {
+        rejectedCount.incrementAndGet();
+        throw new IllegalStateException(
+            "Too many pending transactions (capacity: " + capacity + ")");
+      }
+      if (null != index.putIfAbsent(entry.key, entry)) {
+        throw new IllegalStateException("Already submitted: " + txHash);
+      }
+    }
+    entry.timeout = timerWheel.schedule(() -> expire(entry), timeoutMillis);
+    return entry;
+  }
+
+  /**
+   * Detach every pending entry matching with transactions under a single lock. A caller should
+   * complete returned entries by {@link Entry#complete()} once its confirmation is met. Its
+   * deadline is kept until then.
+   *
+   * @param transactions transactions in a block
+   * @return detached entries
+   */
+  List<Entry> detachAll(final List<Transaction> transactions) {
+    final int count = transactions.size();
+    final byte[][] hashes = new byte[count][];
+    for (int i = 0; i < count; ++i) {
+      hashes[i] = transactions.get(i).getHash().getBytesValue().getValue();
+    }
+
+    List<Entry> detached = null;
+    synchronized (index) {
+      if (0 == index.size()) {
+        return new ArrayList<>(0);
+      }
+      for (final byte[] hash : hashes) {
+        final Entry entry = index.remove(hash);
+        if (null != entry) {
+          if (null == detached) {
+            detached = new ArrayList<>();
+          }
+          detached.add(entry);
+        }
+      }
+    }
+    return null != detached ? detached : new ArrayList<>(0);
+  }
+
+  /**
+   * Put back an entry detached by {@link #detachAll(List)} since a block including it is
+   * replaced.
+   *
+   * @param entry an entry to reopen
+   */
+  void reopen(final Entry entry) {
+    if (entry.future.isDone()) {
+      return;
+    }
+    synchronized (index) {
+      index.putIfAbsent(entry.key, entry);
+    }
+  }
+
+  /**
+   * Remove a pending future of transaction hash without completing it.
+   *
+   * @param txHash a transaction hash
+   * @return true if there was a pending one
+   */
+  boolean remove(final TxHash txHash) {
+    final Entry entry = detach(txHash);
+    if (null == entry) {
+      return false;
+    }
+    entry.cancelTimeout();
+    return true;
+  }
+
+  boolean contains(final TxHash txHash) {
+    final byte[] key = txHash.getBytesValue().getValue();
+    synchronized (index) {
+      return null != index.get(key);
+    }
+  }
+
+  List<TxHash> snapshot() {
+    final List<TxHash> hashes = new ArrayList<>();
+    synchronized (index) {
+      index.forEach((key, entry) -> hashes.add(entry.txHash));
+    }
+    return hashes;
+  }
+
+  int size() {
+    synchronized (index) {
+      return index.size();
+    }
+  }
+
+  long getExpiredCount() {
+    return expiredCount.get();
+  }
+
+  long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * Stop expiration and cancel entries left, so that no caller waits forever.
+   *
+   * @param detached entries detached and not completed yet, cancelled as well
+   */
+  void close(final List<Entry> detached) {
+    timerWheel.stop();
+    final List<Entry> left = new ArrayList<>(detached);
+    synchronized (index) {
+      index.forEach((key, entry) -> left.add(entry));
+    }
+    for (final Entry entry : left) {
+      entry.cancelTimeout();
+      entry.future.completeExceptionally(new CancellationException(
+          "Block stream closed before confirmation: " + entry.txHash));
+    }
+  }
+
+  /**
+   * Detach a pending entry keeping its deadline.
+   *
+   * @param txHash a transaction hash
+   * @return a detached entry or null if not pending
+   */
+  Entry detach(final TxHash txHash) {
+    final byte[] key = txHash.getBytesValue().getValue();
+    synchronized (index) {
+      return index.remove(key);
+    }
+  }
+
+  // entry may be either in an index or waiting for confirmation
+  protected void expire(final Entry entry) {
+    synchronized (index) {
+      index.remove(entry.key, entry);
+    }
+    if (entry.future.completeExceptionally(new TimeoutException(
+        "Not confirmed in " + timeoutMillis + "ms: " + entry.txHash))) {
+      expiredCount.incrementAndGet();
+    }
+  }
+
+  static class Entry {
+
+    protected final TxHash txHash;
+    protected final byte[] key;
+    protected final Confirmation confirmation;
+    protected final CompletableFuture<TxHash> future = new CompletableFuture<>();
+    protected volatile Timeout timeout;
+    protected final long submittedNanos = System.nanoTime();
+    // height of block including it, set on inclusion
+    protected volatile long height;
+
+    Entry(final TxHash txHash, final Confirmation confirmation) {
+      this.txHash = txHash;
+      this.key = txHash.getBytesValue().getValue();
+      this.confirmation = confirmation;
+    }
+
+    void complete() {
+      cancelTimeout();
+      future.complete(txHash);
+    }
+
+    protected void cancelTimeout() {
+      if (null != timeout) {
+        timeout.cancel();
+      }
+    }
+  }
+
+}
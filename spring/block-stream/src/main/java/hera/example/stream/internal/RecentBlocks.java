@@ -0,0 +1,105 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream.internal;
+
+import hera.api.model.BlockHash;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A ring of recently processed block hashes by height. Used to detect block replacement without
+ * querying a node. It's guarded by its own read-write lock, so that a reader doesn't wait for a
+ * stream holding its lock over a node call.
+ */
+class RecentBlocks {
+
+  protected final long[] heights;
+  protected final BlockHash[] hashes;
+
+  protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  RecentBlocks(final int window) {
+    if (window <= 0) {
+      throw new IllegalArgumentException("Window must be positive: " + window);
+    }
+    this.heights = new long[window];
+    this.hashes = new BlockHash[window];
+  }
+
+  int window() {
+    return heights.length;
+  }
+
+  void add(final long height, final BlockHash hash) {
+    final int slot = slotOf(height);
+    lock.writeLock().lock();
+    try {
+      heights[slot] = height;
+      hashes[slot] = hash;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Get a hash of block at {@code height}.
+   *
+   * @param height a block height
+   * @return a block hash or null if out of window
+   */
+  BlockHash get(final long height) {
+    final int slot = slotOf(height);
+    lock.readLock().lock();
+    try {
+      return heights[slot] == height ? hashes[slot] : null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find a height of block of {@code hash}.
+   *
+   * @param hash a block hash
+   * @return a block height or 0 if out of window
+   */
+  long find(final BlockHash hash) {
+    lock.readLock().lock();
+    try {
+      for (int i = 0; i < hashes.length; ++i) {
+        if (hash.equals(hashes[i])) {
+          return heights[i];
+        }
+      }
+      return 0L;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Forget blocks from {@code height}.
+   *
+   * @param height a height to forget from
+   */
+  void truncate(final long height) {
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < heights.length; ++i) {
+        if (heights[i] >= height) {
+          heights[i] = 0L;
+          hashes[i] = null;
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  protected int slotOf(final long height) {
+    return (int) (height % heights.length);
+  }
+
+}
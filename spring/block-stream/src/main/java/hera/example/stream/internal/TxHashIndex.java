@@ -0,0 +1,177 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream.internal;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * An open-addressing hash table keyed by raw transaction hash bytes. Slots are probed by a long
+ * prefix of a hash first, so a lookup for non-matching hash rarely touches a key array. Not
+ * thread-safe.
+ *
+ * @param <V> a type of value
+ */
+class TxHashIndex<V> {
+
+  protected static final float LOAD_FACTOR = 0.5f;
+
+  protected long[] prefixes;
+  protected byte[][] keys;
+  protected Object[] values;
+  protected int mask;
+  protected int size = 0;
+
+  TxHashIndex(final int expectedSize) {
+    int capacity = 16;
+    while (capacity * LOAD_FACTOR < expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  int size() {
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  V get(final byte[] key) {
+    final int slot = find(key, prefixOf(key));
+    return slot < 0 ? null : (V) values[slot];
+  }
+
+  /**
+   * Put a value if there is no mapping for a key.
+   *
+   * @param key a raw hash
+   * @param value a value
+   * @return an existing value or null if newly put
+   */
+  @SuppressWarnings("unchecked")
+  V putIfAbsent(final byte[] key, final V value) {
+    final long prefix = prefixOf(key);
+    int slot = indexOf(prefix);
+    while (null != keys[slot]) {
+      if (prefixes[slot] == prefix && Arrays.equals(keys[slot], key)) {
+        return (V) values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    prefixes[slot] = prefix;
+    keys[slot] = key;
+    values[slot] = value;
+    if (++size > (mask + 1) * LOAD_FACTOR) {
+      rehash((mask + 1) << 1);
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  V remove(final byte[] key) {
+    final int slot = find(key, prefixOf(key));
+    if (slot < 0) {
+      return null;
+    }
+    final V removed = (V) values[slot];
+    delete(slot);
+    return removed;
+  }
+
+  /**
+   * Remove a mapping only if it's mapped to {@code value}.
+   *
+   * @param key a raw hash
+   * @param value an expected value
+   * @return true if removed
+   */
+  boolean remove(final byte[] key, final V value) {
+    final int slot = find(key, prefixOf(key));
+    if (slot < 0 || values[slot] != value) {
+      return false;
+    }
+    delete(slot);
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  void forEach(final BiConsumer<byte[], V> consumer) {
+    for (int i = 0; i < keys.length; ++i) {
+      if (null != keys[i]) {
+        consumer.accept(keys[i], (V) values[i]);
+      }
+    }
+  }
+
+  protected int find(final byte[] key, final long prefix) {
+    int slot = indexOf(prefix);
+    while (null != keys[slot]) {
+      if (prefixes[slot] == prefix && Arrays.equals(keys[slot], key)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  // backward shift deletion to keep probe sequences without tombstones
+  protected void delete(int slot) {
+    --size;
+    int next = (slot + 1) & mask;
+    while (null != keys[next]) {
+      final int ideal = indexOf(prefixes[next]);
+      if (((next - ideal) & mask) >= ((next - slot) & mask)) {
+        prefixes[slot] = prefixes[next];
+        keys[slot] = keys[next];
+        values[slot] = values[next];
+        slot = next;
+      }
+      next = (next + 1) & mask;
+    }
+    prefixes[slot] = 0L;
+    keys[slot] = null;
+    values[slot] = null;
+  }
+
+  protected void rehash(final int capacity) {
+    final long[] oldPrefixes = prefixes;
+    final byte[][] oldKeys = keys;
+    final Object[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; ++i) {
+      if (null != oldKeys[i]) {
+        int slot = indexOf(oldPrefixes[i]);
+        while (null != keys[slot]) {
+          slot = (slot + 1) & mask;
+        }
+        prefixes[slot] = oldPrefixes[i];
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  protected void allocate(final int capacity) {
+    prefixes = new long[capacity];
+    keys = new byte[capacity][];
+    values = new Object[capacity];
+    mask = capacity - 1;
+  }
+
+  protected int indexOf(final long prefix) {
+    // hash is already uniform, just fold and spread
+    final long mixed = (prefix ^ (prefix >>> 32)) * 0x9E3779B97F4A7C15L;
+    return (int) (mixed >>> 32) & mask;
+  }
+
+  protected static long prefixOf(final byte[] key) {
+    long prefix = 0L;
+    final int length = Math.min(8, key.length);
+    for (int i = 0; i < length; ++i) {
+      prefix = (prefix << 8) | (key[i] & 0xFFL);
+    }
+    return prefix;
+  }
+
+}
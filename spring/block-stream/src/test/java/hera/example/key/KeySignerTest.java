@@ -0,0 +1,65 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.key;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import hera.api.model.BytesValue;
+import hera.api.model.Hash;
+import hera.api.model.Signature;
+import hera.key.AergoKey;
+import hera.key.AergoKeyGenerator;
+import hera.key.AergoSignVerifier;
+import hera.key.Verifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+public class KeySignerTest {
+
+  protected final AergoKey key = new AergoKeyGenerator().create();
+
+  protected final KeySigner signer = new KeySigner(key);
+
+  protected final Verifier verifier = new AergoSignVerifier();
+
+  @Test
+  public void shouldSignHashVerifiedByAergoKey() {
+    final Hash hash = Hash.of(BytesValue.of(new byte[] {
+        1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+        17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32}));
+
+    final Signature signature = signer.sign(hash);
+
+    assertTrue(verifier.verify(key.getAddress(), hash, signature));
+  }
+
+  @Test
+  public void shouldSignMessageVerifiedByAergoKey() {
+    final BytesValue message = BytesValue.of("transfer".getBytes());
+
+    final Signature signature = signer.signMessage(message);
+
+    assertTrue(verifier.verify(key.getAddress(), message, signature));
+    // k is deterministic
+    assertEquals(signature.getSign(), signer.signMessage(message).getSign());
+  }
+
+  @Test
+  public void shouldSignOnManyThreads() {
+    final List<CompletableFuture<Boolean>> verifications = new ArrayList<>();
+    for (int i = 0; i < 16; ++i) {
+      final BytesValue message = BytesValue.of(new byte[] {(byte) i});
+      verifications.add(CompletableFuture.supplyAsync(
+          () -> verifier.verify(key.getAddress(), message, signer.signMessage(message))));
+    }
+    for (final CompletableFuture<Boolean> verification : verifications) {
+      assertTrue(verification.join());
+    }
+  }
+
+}
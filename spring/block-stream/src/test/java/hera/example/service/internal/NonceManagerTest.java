@@ -0,0 +1,66 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class NonceManagerTest {
+
+  @Test
+  public void shouldFreeGapsBetweenRestoredNonces() {
+    final NonceManager nonceManager = new NonceManager();
+    nonceManager.bind(10L);
+
+    nonceManager.restore(Arrays.asList(12L, 14L));
+
+    // lost ones are re-issued first, then a next one after a highest restored
+    assertEquals(11L, nonceManager.acquire());
+    assertEquals(13L, nonceManager.acquire());
+    assertEquals(15L, nonceManager.acquire());
+  }
+
+  @Test
+  public void shouldIgnoreNoncesUsedInChain() {
+    final NonceManager nonceManager = new NonceManager();
+    nonceManager.bind(10L);
+
+    nonceManager.restore(Arrays.asList(9L, 10L, 11L));
+
+    assertEquals(12L, nonceManager.acquire());
+    assertEquals(2L, nonceManager.getLag());
+  }
+
+  @Test
+  public void shouldTakeRestoredGapsAsStale() {
+    final NonceManager nonceManager = new NonceManager();
+    nonceManager.bind(10L);
+
+    nonceManager.restore(Arrays.asList(13L));
+
+    final List<Long> gaps = nonceManager.takeStaleGaps(0L);
+    assertEquals(Arrays.asList(11L, 12L), gaps);
+    // taken ones are in flight for a filler
+    assertEquals(3L, nonceManager.getLag());
+    assertEquals(14L, nonceManager.acquire());
+  }
+
+  @Test
+  public void shouldKeepChainNonceOnEmptyRestore() {
+    final NonceManager nonceManager = new NonceManager();
+    nonceManager.bind(10L);
+
+    nonceManager.restore(Arrays.<Long>asList());
+
+    assertEquals(0L, nonceManager.getLag());
+    assertEquals(11L, nonceManager.acquire());
+    assertTrue(nonceManager.isBound());
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.service.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import hera.api.model.AccountAddress;
+import hera.api.model.BytesValue;
+import hera.api.model.TxHash;
+import hera.example.service.internal.TxJournal.Record;
+import hera.key.AergoKeyGenerator;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TxJournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  protected final AccountAddress sender = new AergoKeyGenerator().create().getAddress();
+
+  protected TxJournal journal;
+
+  @Before
+  public void setUp() throws Exception {
+    journal = newJournal();
+    journal.init();
+  }
+
+  @After
+  public void tearDown() {
+    journal.destroy();
+  }
+
+  @Test
+  public void shouldDecodeEncodedRecord() {
+    final Record record = new Record(TxJournal.SUBMITTED, hashOf(1).getBytesValue().getValue(),
+        sender.getBytesValue().getValue(), 42L);
+
+    final Record decoded = Record.decode(ByteBuffer.wrap(record.encode()));
+
+    assertNotNull(decoded);
+    assertEquals(record.type, decoded.type);
+    assertArrayEquals(record.hash, decoded.hash);
+    assertArrayEquals(record.sender, decoded.sender);
+    assertEquals(record.nonce, decoded.nonce);
+  }
+
+  @Test
+  public void shouldStopAtCorruptedCrc() {
+    final byte[] first = new Record(TxJournal.SUBMITTED, hashOf(1).getBytesValue().getValue(),
+        sender.getBytesValue().getValue(), 1L).encode();
+    final byte[] second = new Record(TxJournal.SUBMITTED, hashOf(2).getBytesValue().getValue(),
+        sender.getBytesValue().getValue(), 2L).encode();
+    // flip a bit of a nonce in a second record
+    second[second.length - Integer.BYTES - 1] ^= 0x01;
+    final ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length);
+    buffer.put(first).put(second).flip();
+
+    assertNotNull(Record.decode(buffer));
+    assertNull(Record.decode(buffer));
+  }
+
+  @Test
+  public void shouldStopAtZeroLength() {
+    assertNull(Record.decode(ByteBuffer.allocate(64)));
+  }
+
+  @Test
+  public void shouldKeepOnlyUnresolvedOnRoll() throws Exception {
+    journal.submitted(hashOf(1), sender, 1L);
+    journal.submitted(hashOf(2), sender, 2L);
+    journal.submitted(hashOf(3), sender, 3L);
+    journal.resolved(hashOf(2), TxJournal.CONFIRMED);
+    journal.resolved(hashOf(3), TxJournal.FAILED);
+    journal.submitted(hashOf(4), sender, 4L);
+
+    synchronized (journal) {
+      journal.roll();
+    }
+    journal.destroy();
+
+    final File[] segments = journal.listSegments();
+    assertEquals(1, segments.length);
+
+    // a new segment alone holds unresolved ones in submission order
+    final TxJournal reopened = newJournal();
+    reopened.read(segments[0]);
+    final List<Long> nonces = new ArrayList<>();
+    for (final Record record : reopened.getUnresolved()) {
+      assertEquals(TxJournal.SUBMITTED, record.type);
+      nonces.add(record.getNonce());
+    }
+    assertEquals(2, nonces.size());
+    assertEquals(Long.valueOf(1L), nonces.get(0));
+    assertEquals(Long.valueOf(4L), nonces.get(1));
+  }
+
+  protected TxJournal newJournal() {
+    final TxJournal created = new TxJournal();
+    created.enabled = true;
+    created.directory = folder.getRoot().getAbsolutePath();
+    created.segmentSize = 4096;
+    created.flushInterval = 10L;
+    created.sync = false;
+    return created;
+  }
+
+  protected static TxHash hashOf(final int seed) {
+    final byte[] bytes = new byte[32];
+    bytes[0] = (byte) seed;
+    return TxHash.of(BytesValue.of(bytes));
+  }
+
+}
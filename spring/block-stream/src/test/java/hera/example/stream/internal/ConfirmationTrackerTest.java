@@ -0,0 +1,104 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hera.api.model.BytesValue;
+import hera.api.model.TxHash;
+import hera.example.stream.Confirmation;
+import hera.example.stream.internal.PendingRegistry.Entry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+public class ConfirmationTrackerTest {
+
+  protected final ConfirmationTracker tracker = new ConfirmationTracker();
+
+  protected final PendingRegistry registry = new PendingRegistry(16, 60000L, 100L,
+      tracker::size);
+
+  @After
+  public void tearDown() {
+    registry.close(Collections.emptyList());
+  }
+
+  @Test
+  public void shouldReopenEntriesIncludedAfterFork() {
+    final Entry kept = include(hashOf(1), Confirmation.of(3), 10L);
+    final Entry replaced = include(hashOf(2), Confirmation.of(3), 11L);
+    final Entry irreversible = include(hashOf(3), Confirmation.IRREVERSIBLE, 12L);
+    assertEquals(3, tracker.size());
+
+    final List<Entry> reopened = tracker.rollback(10L);
+    reopened.forEach(registry::reopen);
+
+    assertEquals(2, reopened.size());
+    assertTrue(reopened.containsAll(Arrays.asList(replaced, irreversible)));
+    assertEquals(1, tracker.size());
+    assertFalse(registry.contains(kept.txHash));
+    assertTrue(registry.contains(replaced.txHash));
+    assertTrue(registry.contains(irreversible.txHash));
+    assertFalse(tracker.isWaitingLib());
+  }
+
+  @Test
+  public void shouldSettleReopenedEntryOnlyAfterInclusionAgain() {
+    final Entry entry = include(hashOf(1), Confirmation.of(3), 11L);
+    tracker.rollback(10L).forEach(registry::reopen);
+
+    // a replaced block doesn't confirm it
+    assertTrue(tracker.settle(13L, 0L).isEmpty());
+
+    final Entry detached = registry.detach(entry.txHash);
+    tracker.include(Collections.singletonList(detached), 12L);
+    assertTrue(tracker.settle(13L, 0L).isEmpty());
+    assertEquals(Collections.singletonList(entry), tracker.settle(14L, 0L));
+    assertEquals(0, tracker.size());
+  }
+
+  @Test
+  public void shouldNotReopenCompletedEntry() {
+    final Entry entry = include(hashOf(1), Confirmation.of(3), 11L);
+    entry.complete();
+
+    tracker.rollback(10L).forEach(registry::reopen);
+
+    assertFalse(registry.contains(entry.txHash));
+    assertEquals(0, registry.size());
+  }
+
+  @Test
+  public void shouldCountIncludedAgainstCapacity() {
+    include(hashOf(1), Confirmation.of(3), 10L);
+
+    assertEquals(0, registry.size());
+    assertEquals(1, tracker.size());
+    tracker.rollback(9L).forEach(registry::reopen);
+    assertEquals(1, registry.size());
+    assertEquals(0, tracker.size());
+  }
+
+  // register, detach as on a block and track until confirmed
+  protected Entry include(final TxHash txHash, final Confirmation confirmation,
+      final long height) {
+    registry.register(txHash, confirmation);
+    final Entry entry = registry.detach(txHash);
+    assertTrue(tracker.include(Collections.singletonList(entry), height).isEmpty());
+    return entry;
+  }
+
+  protected static TxHash hashOf(final int seed) {
+    final byte[] bytes = new byte[32];
+    Arrays.fill(bytes, (byte) seed);
+    return TxHash.of(BytesValue.of(bytes));
+  }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import hera.example.stream.internal.HashedTimerWheel.Timeout;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedTimerWheelTest {
+
+  // a tick long enough not to pass during a test, ticked by hand
+  protected static final long TICK = 10000L;
+
+  protected HashedTimerWheel wheel;
+
+  @Before
+  public void setUp() {
+    wheel = new HashedTimerWheel("test-timer", TICK, 4);
+    wheel.stop();
+  }
+
+  @After
+  public void tearDown() {
+    wheel.stop();
+  }
+
+  @Test
+  public void shouldExpireAfterSeveralRotations() {
+    final AtomicInteger expired = new AtomicInteger(0);
+    // deadline of tick 10 in a wheel of 4, 2 rotations and a half
+    wheel.schedule(expired::incrementAndGet, 9 * TICK);
+
+    advance(10);
+    assertEquals(0, expired.get());
+
+    advance(1);
+    assertEquals(1, expired.get());
+
+    advance(8);
+    assertEquals(1, expired.get());
+  }
+
+  @Test
+  public void shouldExpireInScheduledOrderAcrossRotations() {
+    final StringBuilder order = new StringBuilder();
+    wheel.schedule(() -> order.append('c'), 13 * TICK);
+    wheel.schedule(() -> order.append('a'), 1 * TICK);
+    wheel.schedule(() -> order.append('b'), 5 * TICK);
+
+    advance(3);
+    assertEquals("a", order.toString());
+    advance(4);
+    assertEquals("ab", order.toString());
+    advance(8);
+    assertEquals("abc", order.toString());
+  }
+
+  @Test
+  public void shouldNotExpireCancelled() {
+    final AtomicInteger expired = new AtomicInteger(0);
+    final Timeout cancelledBeforeTransfer = wheel.schedule(expired::incrementAndGet, TICK);
+    cancelledBeforeTransfer.cancel();
+    final Timeout cancelledInBucket = wheel.schedule(expired::incrementAndGet, 6 * TICK);
+    advance(1);
+    cancelledInBucket.cancel();
+
+    advance(12);
+
+    assertEquals(0, expired.get());
+  }
+
+  protected void advance(final int ticks) {
+    for (int i = 0; i < ticks; ++i) {
+      wheel.advance();
+    }
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.stream.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class TxHashIndexTest {
+
+  // 16 slots, not rehashed up to 8 entries
+  protected final TxHashIndex<Integer> index = new TxHashIndex<>(8);
+
+  @Test
+  public void shouldFindClusterAfterDeletingInsideIt() {
+    final long prefix = prefixAt(3);
+    final byte[][] clustered = new byte[4][];
+    for (int i = 0; i < clustered.length; ++i) {
+      clustered[i] = keyOf(prefix, i);
+      assertNull(index.putIfAbsent(clustered[i], i));
+    }
+    // probed from slot 4 and shifted down on a deletion before it
+    final byte[] other = keyOf(prefixAt(4), 9);
+    index.putIfAbsent(other, 9);
+
+    assertEquals(Integer.valueOf(1), index.remove(clustered[1]));
+
+    assertNull(index.get(clustered[1]));
+    assertEquals(Integer.valueOf(0), index.get(clustered[0]));
+    assertEquals(Integer.valueOf(2), index.get(clustered[2]));
+    assertEquals(Integer.valueOf(3), index.get(clustered[3]));
+    assertEquals(Integer.valueOf(9), index.get(other));
+    assertEquals(4, index.size());
+  }
+
+  @Test
+  public void shouldFindClusterWrappingAroundAfterDeletion() {
+    final int last = index.mask;
+    final long prefix = prefixAt(last);
+    final byte[][] clustered = new byte[3][];
+    for (int i = 0; i < clustered.length; ++i) {
+      clustered[i] = keyOf(prefix, i);
+      index.putIfAbsent(clustered[i], i);
+    }
+    // slots of last, 0 and 1 are taken, one of slot 0 is probed to slot 2
+    final byte[] wrapped = keyOf(prefixAt(0), 9);
+    index.putIfAbsent(wrapped, 9);
+    assertEquals(2, slotOf(wrapped));
+
+    index.remove(clustered[0]);
+
+    assertEquals(last, slotOf(clustered[1]));
+    assertEquals(0, slotOf(clustered[2]));
+    assertEquals(1, slotOf(wrapped));
+    assertNull(index.get(clustered[0]));
+    assertEquals(Integer.valueOf(9), index.get(wrapped));
+
+    index.remove(clustered[1]);
+    index.remove(clustered[2]);
+
+    assertEquals(0, slotOf(wrapped));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void shouldRemoveOnlyMappedValue() {
+    final byte[] key = keyOf(prefixAt(5), 0);
+    final Integer value = 1000;
+    index.putIfAbsent(key, value);
+
+    assertFalse(index.remove(key, 2000));
+    assertTrue(index.remove(key, value));
+    assertNull(index.get(key));
+    assertNull(index.putIfAbsent(key, value));
+  }
+
+  @Test
+  public void shouldKeepEntriesOnRehash() {
+    final TxHashIndex<Integer> small = new TxHashIndex<>(1);
+    for (int i = 0; i < 100; ++i) {
+      assertNull(small.putIfAbsent(keyOf(i, i), i));
+    }
+    for (int i = 0; i < 100; i += 2) {
+      small.remove(keyOf(i, i));
+    }
+    for (int i = 0; i < 100; ++i) {
+      assertEquals((0 == i % 2) ? null : Integer.valueOf(i), small.get(keyOf(i, i)));
+    }
+    assertEquals(50, small.size());
+  }
+
+  // a prefix of which home slot is a slot
+  protected long prefixAt(final int slot) {
+    long prefix = 1L;
+    while (index.indexOf(prefix) != slot) {
+      ++prefix;
+    }
+    return prefix;
+  }
+
+  protected int slotOf(final byte[] key) {
+    return index.find(key, TxHashIndex.prefixOf(key));
+  }
+
+  protected static byte[] keyOf(final long prefix, final int tail) {
+    return ByteBuffer.allocate(32).putLong(prefix).putInt(28, tail).array();
+  }
+
+}
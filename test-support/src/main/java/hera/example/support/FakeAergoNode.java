@@ -0,0 +1,282 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.support;
+
+import com.google.protobuf.ByteString;
+import hera.api.model.AccountAddress;
+import hera.api.model.Aer;
+import hera.api.model.Aer.Unit;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import types.Blockchain.Block;
+
+/**
+ * A fake aergo node serving grpc on a local port. It accepts commits into a mempool, mints a block
+ * on an interval and streams it. A client connects with {@link #getEndpoint()} as to a real node.
+ */
+public class FakeAergoNode implements Closeable {
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /**
+   * Run a node standalone.
+   *
+   * @param args a port followed by addresses to fund
+   * @throws Exception on failure
+   */
+  public static void main(String[] args) throws Exception {
+    final Builder builder = newBuilder().port(args.length > 0 ? Integer.parseInt(args[0]) : 7845);
+    for (int i = 1; i < args.length; ++i) {
+      builder.fund(AccountAddress.of(args[i]), Aer.of("1000000000", Unit.AERGO));
+    }
+    final FakeAergoNode node = builder.build().start();
+    System.out.println("Fake aergo node started on " + node.getEndpoint());
+    Runtime.getRuntime().addShutdownHook(new Thread(node::close));
+    node.server.awaitTermination();
+  }
+
+  protected final int port;
+
+  protected final long blockInterval;
+
+  protected final FakeChain chain;
+
+  protected final Faults faults;
+
+  protected final FakeAergoService service;
+
+  protected Server server;
+
+  protected ScheduledExecutorService minter;
+
+  protected FakeAergoNode(final Builder builder) {
+    this.port = builder.port;
+    this.blockInterval = builder.blockInterval;
+    this.chain = new FakeChain(builder.chainId, builder.blockCapacity, builder.mempoolCapacity,
+        builder.libDistance, builder.balances, currentTimeNanos());
+    this.faults = new Faults(builder.seed);
+    this.service = new FakeAergoService(chain);
+  }
+
+  /**
+   * Start serving and minting.
+   *
+   * @return this
+   * @throws IOException if a port is not available
+   */
+  public synchronized FakeAergoNode start() throws IOException {
+    if (null != server) {
+      throw new IllegalStateException("Already started");
+    }
+    server = ServerBuilder.forPort(port)
+        .addService(ServerInterceptors.intercept(service, new FaultInterceptor(faults)))
+        .build()
+        .start();
+    if (blockInterval > 0L) {
+      minter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "fake-node-minter");
+        thread.setDaemon(true);
+        return thread;
+      });
+      minter.scheduleAtFixedRate(this::mintQuietly, blockInterval, blockInterval,
+          TimeUnit.MILLISECONDS);
+    }
+    return this;
+  }
+
+  /**
+   * Get an endpoint to connect.
+   *
+   * @return an endpoint in {hostname}:{port}
+   */
+  public String getEndpoint() {
+    if (null == server) {
+      throw new IllegalStateException("Not started");
+    }
+    return "localhost:" + server.getPort();
+  }
+
+  public Faults getFaults() {
+    return faults;
+  }
+
+  public long getBestHeight() {
+    return chain.getBestBlock().getHeader().getBlockNo();
+  }
+
+  public int getMempoolSize() {
+    return chain.getMempoolSize();
+  }
+
+  /**
+   * Mint a block now and stream it. With a block interval of 0, it's the only way to make a
+   * block.
+   *
+   * @return a height of minted block
+   */
+  public synchronized long mint() {
+    final Block block = chain.mint(currentTimeNanos());
+    if (faults.shouldResetStreams()) {
+      service.resetStreams();
+    } else {
+      service.publish(block);
+    }
+    return block.getHeader().getBlockNo();
+  }
+
+  /**
+   * Fail every block stream so that a client has to resubscribe.
+   */
+  public void resetStreams() {
+    service.resetStreams();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (null != minter) {
+      minter.shutdownNow();
+    }
+    if (null != server) {
+      service.completeStreams();
+      server.shutdownNow();
+    }
+  }
+
+  protected void mintQuietly() {
+    try {
+      mint();
+    } catch (Exception e) {
+      System.err.println("Minting failed: " + e);
+    }
+  }
+
+  protected static long currentTimeNanos() {
+    return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+  }
+
+  /**
+   * A builder of {@link FakeAergoNode}.
+   */
+  public static class Builder {
+
+    protected int port = 0;
+
+    protected String chainId = "fake.aergo.io";
+
+    protected long blockInterval = 1000L;
+
+    protected int blockCapacity = 10000;
+
+    protected int mempoolCapacity = 100000;
+
+    protected int libDistance = 3;
+
+    protected long seed = 0L;
+
+    protected final Map<ByteString, BigInteger> balances = new LinkedHashMap<>();
+
+    protected Builder() {
+    }
+
+    /**
+     * Set a port to listen. 0 to pick a free one, which is the default.
+     *
+     * @param port a port
+     * @return this
+     */
+    public Builder port(final int port) {
+      this.port = port;
+      return this;
+    }
+
+    public Builder chainId(final String chainId) {
+      this.chainId = chainId;
+      return this;
+    }
+
+    /**
+     * Set a block interval. 0 to mint only by {@link FakeAergoNode#mint()}.
+     *
+     * @param blockInterval a block interval in milliseconds
+     * @return this
+     */
+    public Builder blockInterval(final long blockInterval) {
+      this.blockInterval = blockInterval;
+      return this;
+    }
+
+    /**
+     * Set a maximum number of transactions in a block.
+     *
+     * @param blockCapacity a block capacity
+     * @return this
+     */
+    public Builder blockCapacity(final int blockCapacity) {
+      this.blockCapacity = blockCapacity;
+      return this;
+    }
+
+    /**
+     * Set a maximum number of transactions in a mempool. A commit over it fails.
+     *
+     * @param mempoolCapacity a mempool capacity
+     * @return this
+     */
+    public Builder mempoolCapacity(final int mempoolCapacity) {
+      this.mempoolCapacity = mempoolCapacity;
+      return this;
+    }
+
+    /**
+     * Set a distance from a best block to a last irreversible block.
+     *
+     * @param libDistance a lib distance
+     * @return this
+     */
+    public Builder libDistance(final int libDistance) {
+      this.libDistance = libDistance;
+      return this;
+    }
+
+    /**
+     * Set a seed of random faults.
+     *
+     * @param seed a seed
+     * @return this
+     */
+    public Builder seed(final long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /**
+     * Give balance to an account in a genesis block.
+     *
+     * @param address an account address
+     * @param balance a balance
+     * @return this
+     */
+    public Builder fund(final AccountAddress address, final Aer balance) {
+      balances.put(ByteString.copyFrom(address.getBytesValue().getValue()), balance.getValue());
+      return this;
+    }
+
+    public FakeAergoNode build() {
+      return new FakeAergoNode(this);
+    }
+  }
+
+}
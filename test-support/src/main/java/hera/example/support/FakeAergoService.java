@@ -0,0 +1,228 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.support;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import types.AergoRPCServiceGrpc.AergoRPCServiceImplBase;
+import types.Blockchain.Block;
+import types.Blockchain.Receipt;
+import types.Blockchain.State;
+import types.Blockchain.Tx;
+import types.Blockchain.TxList;
+import types.Rpc.BlockMetadata;
+import types.Rpc.BlockchainStatus;
+import types.Rpc.ChainId;
+import types.Rpc.ChainInfo;
+import types.Rpc.CommitResultList;
+import types.Rpc.Empty;
+import types.Rpc.SingleBytes;
+
+/**
+ * Serves rpc calls used by examples over {@link FakeChain}. Others are left unimplemented.
+ */
+class FakeAergoService extends AergoRPCServiceImplBase {
+
+  protected static final String CONSENSUS = "dpos";
+
+  protected final FakeChain chain;
+
+  protected final List<StreamObserver<Block>> blockObservers = new CopyOnWriteArrayList<>();
+
+  protected final List<StreamObserver<BlockMetadata>> metadataObservers =
+      new CopyOnWriteArrayList<>();
+
+  FakeAergoService(final FakeChain chain) {
+    this.chain = chain;
+  }
+
+  @Override
+  public void blockchain(final Empty request,
+      final StreamObserver<BlockchainStatus> responseObserver) {
+    final Block best = chain.getBestBlock();
+    final String consensusInfo = "{\"Type\":\"" + CONSENSUS + "\",\"Status\":{\"LibNo\":"
+        + chain.getLibHeight() + "}}";
+    respond(responseObserver, BlockchainStatus.newBuilder()
+        .setBestBlockHash(best.getHash())
+        .setBestHeight(best.getHeader().getBlockNo())
+        .setConsensusInfo(consensusInfo)
+        .setBestChainIdHash(chain.getChainIdHash())
+        .setChainInfo(newChainInfo())
+        .build());
+  }
+
+  @Override
+  public void getChainInfo(final Empty request, final StreamObserver<ChainInfo> responseObserver) {
+    respond(responseObserver, newChainInfo());
+  }
+
+  @Override
+  public void getBlock(final SingleBytes request, final StreamObserver<Block> responseObserver) {
+    final Block block = findBlock(request.getValue());
+    if (null == block) {
+      notFound(responseObserver, "block");
+    } else {
+      respond(responseObserver, block);
+    }
+  }
+
+  @Override
+  public void getBlockMetadata(final SingleBytes request,
+      final StreamObserver<BlockMetadata> responseObserver) {
+    final Block block = findBlock(request.getValue());
+    if (null == block) {
+      notFound(responseObserver, "block");
+    } else {
+      respond(responseObserver, toMetadata(block));
+    }
+  }
+
+  @Override
+  public void listBlockStream(final Empty request, final StreamObserver<Block> responseObserver) {
+    register(blockObservers, responseObserver);
+  }
+
+  @Override
+  public void listBlockMetadataStream(final Empty request,
+      final StreamObserver<BlockMetadata> responseObserver) {
+    register(metadataObservers, responseObserver);
+  }
+
+  @Override
+  public void getState(final SingleBytes request, final StreamObserver<State> responseObserver) {
+    respond(responseObserver, chain.getState(request.getValue()));
+  }
+
+  @Override
+  public void getTX(final SingleBytes request, final StreamObserver<Tx> responseObserver) {
+    final Tx tx = chain.getTransaction(request.getValue());
+    if (null == tx) {
+      notFound(responseObserver, "tx");
+    } else {
+      respond(responseObserver, tx);
+    }
+  }
+
+  @Override
+  public void getReceipt(final SingleBytes request,
+      final StreamObserver<Receipt> responseObserver) {
+    final Receipt receipt = chain.getReceipt(request.getValue());
+    if (null == receipt) {
+      notFound(responseObserver, "receipt");
+    } else {
+      respond(responseObserver, receipt);
+    }
+  }
+
+  @Override
+  public void commitTX(final TxList request,
+      final StreamObserver<CommitResultList> responseObserver) {
+    final CommitResultList.Builder results = CommitResultList.newBuilder();
+    for (final Tx tx : request.getTxsList()) {
+      results.addResults(chain.commit(tx));
+    }
+    respond(responseObserver, results.build());
+  }
+
+  // stream methods are synchronized since a stream observer is not thread-safe
+
+  /**
+   * Send a minted block to every stream.
+   *
+   * @param block a minted block
+   */
+  synchronized void publish(final Block block) {
+    final BlockMetadata metadata = toMetadata(block);
+    for (final StreamObserver<Block> observer : blockObservers) {
+      send(blockObservers, observer, block);
+    }
+    for (final StreamObserver<BlockMetadata> observer : metadataObservers) {
+      send(metadataObservers, observer, metadata);
+    }
+  }
+
+  /**
+   * Fail every stream with UNAVAILABLE so that a client has to resubscribe.
+   */
+  synchronized void resetStreams() {
+    reset(blockObservers);
+    reset(metadataObservers);
+  }
+
+  /**
+   * Complete every stream on shutdown.
+   */
+  synchronized void completeStreams() {
+    for (final StreamObserver<Block> observer : blockObservers) {
+      observer.onCompleted();
+    }
+    blockObservers.clear();
+    for (final StreamObserver<BlockMetadata> observer : metadataObservers) {
+      observer.onCompleted();
+    }
+    metadataObservers.clear();
+  }
+
+  protected Block findBlock(final ByteString key) {
+    // a height is requested as 8 bytes and a hash as 32 bytes
+    return (8 == key.size()) ? chain.getBlock(FakeChain.toHeight(key)) : chain.getBlock(key);
+  }
+
+  protected ChainInfo newChainInfo() {
+    return ChainInfo.newBuilder()
+        .setId(ChainId.newBuilder()
+            .setMagic(chain.getChainId().toStringUtf8())
+            .setConsensus(CONSENSUS)
+            .build())
+        .setBpNumber(1)
+        .build();
+  }
+
+  protected static BlockMetadata toMetadata(final Block block) {
+    return BlockMetadata.newBuilder()
+        .setHash(block.getHash())
+        .setHeader(block.getHeader())
+        .setTxcount(block.getBody().getTxsCount())
+        .build();
+  }
+
+  protected static <T> void register(final List<StreamObserver<T>> observers,
+      final StreamObserver<T> observer) {
+    ((ServerCallStreamObserver<T>) observer).setOnCancelHandler(() -> observers.remove(observer));
+    observers.add(observer);
+  }
+
+  protected static <T> void send(final List<StreamObserver<T>> observers,
+      final StreamObserver<T> observer, final T value) {
+    try {
+      observer.onNext(value);
+    } catch (RuntimeException e) {
+      // cancelled by a client in the meantime
+      observers.remove(observer);
+    }
+  }
+
+  protected static <T> void reset(final List<StreamObserver<T>> observers) {
+    for (final StreamObserver<T> observer : observers) {
+      observer.onError(Status.UNAVAILABLE.withDescription("Reset by fault injection")
+          .asRuntimeException());
+    }
+    observers.clear();
+  }
+
+  protected static <T> void respond(final StreamObserver<T> observer, final T value) {
+    observer.onNext(value);
+    observer.onCompleted();
+  }
+
+  protected static void notFound(final StreamObserver<?> observer, final String what) {
+    observer.onError(Status.NOT_FOUND.withDescription(what + " not found").asRuntimeException());
+  }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.support;
+
+import com.google.protobuf.ByteString;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import types.Blockchain.Block;
+import types.Blockchain.BlockBody;
+import types.Blockchain.BlockHeader;
+import types.Blockchain.Receipt;
+import types.Blockchain.State;
+import types.Blockchain.Tx;
+import types.Blockchain.TxBody;
+import types.Rpc.CommitResult;
+import types.Rpc.CommitStatus;
+
+/**
+ * A state of fake chain. It keeps accounts, a mempool and blocks, and mints a block from
+ * executable transactions. A signature is not verified. Thread-safe.
+ */
+class FakeChain {
+
+  protected static final String SUCCESS = "SUCCESS";
+
+  protected static final String ERROR = "ERROR";
+
+  protected final ByteString chainId;
+
+  protected final ByteString chainIdHash;
+
+  protected final int blockCapacity;
+
+  protected final int mempoolCapacity;
+
+  protected final int libDistance;
+
+  // address -> account, in insertion order to pick transactions deterministically
+  protected final Map<ByteString, Account> accounts = new LinkedHashMap<>();
+
+  // address -> nonce -> transaction, only ones above a state nonce
+  protected final Map<ByteString, TreeMap<Long, Tx>> mempool = new LinkedHashMap<>();
+
+  protected int mempoolSize = 0;
+
+  protected final List<Block> blocks = new ArrayList<>();
+
+  protected final Map<ByteString, Block> blocksByHash = new HashMap<>();
+
+  // tx hash -> transaction in mempool or in a block
+  protected final Map<ByteString, Tx> transactions = new HashMap<>();
+
+  protected final Map<ByteString, Receipt> receipts = new HashMap<>();
+
+  FakeChain(final String chainId, final int blockCapacity, final int mempoolCapacity,
+      final int libDistance, final Map<ByteString, BigInteger> genesisBalances,
+      final long genesisTimestamp) {
+    this.chainId = ByteString.copyFrom(chainId, StandardCharsets.UTF_8);
+    this.chainIdHash = ByteString.copyFrom(sha256(this.chainId.toByteArray()));
+    this.blockCapacity = blockCapacity;
+    this.mempoolCapacity = mempoolCapacity;
+    this.libDistance = libDistance;
+    for (final Map.Entry<ByteString, BigInteger> entry : genesisBalances.entrySet()) {
+      account(entry.getKey()).balance = entry.getValue();
+    }
+    addBlock(ByteString.EMPTY, genesisTimestamp, new ArrayList<>());
+  }
+
+  ByteString getChainId() {
+    return chainId;
+  }
+
+  ByteString getChainIdHash() {
+    return chainIdHash;
+  }
+
+  synchronized Block getBestBlock() {
+    return blocks.get(blocks.size() - 1);
+  }
+
+  synchronized long getLibHeight() {
+    return Math.max(0L, getBestBlock().getHeader().getBlockNo() - libDistance);
+  }
+
+  synchronized Block getBlock(final long height) {
+    return (height >= 0L && height < blocks.size()) ? blocks.get((int) height) : null;
+  }
+
+  synchronized Block getBlock(final ByteString hash) {
+    return blocksByHash.get(hash);
+  }
+
+  synchronized Tx getTransaction(final ByteString hash) {
+    return transactions.get(hash);
+  }
+
+  synchronized Receipt getReceipt(final ByteString hash) {
+    return receipts.get(hash);
+  }
+
+  synchronized int getMempoolSize() {
+    return mempoolSize;
+  }
+
+  synchronized State getState(final ByteString address) {
+    final Account account = accounts.get(address);
+    return State.newBuilder()
+        .setNonce(null != account ? account.nonce : 0L)
+        .setBalance(toBytes(null != account ? account.balance : BigInteger.ZERO))
+        .build();
+  }
+
+  /**
+   * Accept a transaction into a mempool. A nonce gap is allowed and a transaction waits there
+   * until it's filled.
+   *
+   * @param tx a transaction
+   * @return a commit result
+   */
+  synchronized CommitResult commit(final Tx tx) {
+    final ByteString hash = tx.getHash();
+    if (hash.isEmpty()) {
+      return result(hash, CommitStatus.TX_INVALID_HASH, "empty hash");
+    }
+    if (transactions.containsKey(hash)) {
+      return result(hash, CommitStatus.TX_ALREADY_EXISTS, "tx already exists");
+    }
+    final TxBody body = tx.getBody();
+    final Account account = account(body.getAccount());
+    if (body.getNonce() <= account.nonce) {
+      return result(hash, CommitStatus.TX_NONCE_TOO_LOW, "nonce is too low");
+    }
+    if (account.balance.compareTo(toBigInteger(body.getAmount())) < 0) {
+      return result(hash, CommitStatus.TX_INSUFFICIENT_BALANCE, "not enough balance");
+    }
+    final TreeMap<Long, Tx> queued = mempool.computeIfAbsent(body.getAccount(),
+        k -> new TreeMap<>());
+    if (queued.containsKey(body.getNonce())) {
+      return result(hash, CommitStatus.TX_HAS_SAME_NONCE, "tx with same nonce is in mempool");
+    }
+    if (mempoolSize >= mempoolCapacity) {
+      return result(hash, CommitStatus.TX_INTERNAL_ERROR, "mempool is full");
+    }
+    queued.put(body.getNonce(), tx);
+    transactions.put(hash, tx);
+    ++mempoolSize;
+    return result(hash, CommitStatus.TX_OK, "");
+  }
+
+  /**
+   * Mint a block with up to block capacity executable transactions. Senders take turns so that
+   * a busy sender doesn't fill a block.
+   *
+   * @param timestamp a block timestamp in unix nanos
+   * @return a minted block
+   */
+  synchronized Block mint(final long timestamp) {
+    final List<Tx> picked = new ArrayList<>();
+    boolean progress = true;
+    while (picked.size() < blockCapacity && progress) {
+      progress = false;
+      final Iterator<Map.Entry<ByteString, TreeMap<Long, Tx>>> it = mempool.entrySet().iterator();
+      while (it.hasNext() && picked.size() < blockCapacity) {
+        final Map.Entry<ByteString, TreeMap<Long, Tx>> entry = it.next();
+        final Account account = accounts.get(entry.getKey());
+        final TreeMap<Long, Tx> queued = entry.getValue();
+        if (queued.isEmpty() || queued.firstKey() != account.nonce + 1) {
+          continue;
+        }
+        picked.add(queued.pollFirstEntry().getValue());
+        --mempoolSize;
+        ++account.nonce;
+        progress = true;
+        if (queued.isEmpty()) {
+          it.remove();
+        }
+      }
+    }
+    final Block block = addBlock(getBestBlock().getHash(), timestamp, picked);
+    execute(block);
+    return block;
+  }
+
+  // nonces are consumed on pick, balances are moved here
+  protected void execute(final Block block) {
+    final List<Tx> txs = block.getBody().getTxsList();
+    for (int i = 0; i < txs.size(); ++i) {
+      final Tx tx = txs.get(i);
+      final TxBody body = tx.getBody();
+      final Account sender = accounts.get(body.getAccount());
+      final BigInteger amount = toBigInteger(body.getAmount());
+      final String status;
+      if (sender.balance.compareTo(amount) >= 0) {
+        sender.balance = sender.balance.subtract(amount);
+        final Account recipient = account(body.getRecipient());
+        recipient.balance = recipient.balance.add(amount);
+        status = SUCCESS;
+      } else {
+        status = ERROR;
+      }
+      receipts.put(tx.getHash(), Receipt.newBuilder()
+          .setTxHash(tx.getHash())
+          .setStatus(status)
+          .setBlockNo(block.getHeader().getBlockNo())
+          .setBlockHash(block.getHash())
+          .setTxIndex(i)
+          .setFrom(body.getAccount())
+          .setTo(body.getRecipient())
+          .build());
+    }
+  }
+
+  protected Block addBlock(final ByteString previousHash, final long timestamp,
+      final List<Tx> txs) {
+    final MessageDigest digest = newSha256();
+    for (final Tx tx : txs) {
+      digest.update(tx.getHash().toByteArray());
+    }
+    final BlockHeader header = BlockHeader.newBuilder()
+        .setChainID(chainId)
+        .setPrevBlockHash(previousHash)
+        .setBlockNo(blocks.size())
+        .setTimestamp(timestamp)
+        .setTxsRootHash(ByteString.copyFrom(digest.digest()))
+        .build();
+    final Block block = Block.newBuilder()
+        .setHash(ByteString.copyFrom(sha256(header.toByteArray())))
+        .setHeader(header)
+        .setBody(BlockBody.newBuilder().addAllTxs(txs).build())
+        .build();
+    blocks.add(block);
+    blocksByHash.put(block.getHash(), block);
+    return block;
+  }
+
+  protected Account account(final ByteString address) {
+    return accounts.computeIfAbsent(address, k -> new Account());
+  }
+
+  protected static CommitResult result(final ByteString hash, final CommitStatus status,
+      final String detail) {
+    return CommitResult.newBuilder().setHash(hash).setError(status).setDetail(detail).build();
+  }
+
+  // a node encodes a height as 8 bytes little endian in a request
+  static long toHeight(final ByteString bytes) {
+    return ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN).getLong();
+  }
+
+  // amount and balance are unsigned big endian
+  static BigInteger toBigInteger(final ByteString bytes) {
+    return bytes.isEmpty() ? BigInteger.ZERO : new BigInteger(1, bytes.toByteArray());
+  }
+
+  static ByteString toBytes(final BigInteger value) {
+    if (0 == value.signum()) {
+      return ByteString.EMPTY;
+    }
+    final byte[] raw = value.toByteArray();
+    return (0 == raw[0]) ? ByteString.copyFrom(raw, 1, raw.length - 1) : ByteString.copyFrom(raw);
+  }
+
+  static byte[] sha256(final byte[] raw) {
+    return newSha256().digest(raw);
+  }
+
+  protected static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  protected static class Account {
+    protected long nonce = 0L;
+    protected BigInteger balance = BigInteger.ZERO;
+  }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.support;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Delays or drops a call by {@link Faults}.
+ */
+class FaultInterceptor implements ServerInterceptor {
+
+  protected final Faults faults;
+
+  FaultInterceptor(final Faults faults) {
+    this.faults = faults;
+  }
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(final ServerCall<ReqT, RespT> call,
+      final Metadata headers, final ServerCallHandler<ReqT, RespT> next) {
+    final long delay = faults.nextDelay();
+    if (delay > 0L) {
+      // a server executor is a cached pool, so blocking here doesn't hold other calls
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (faults.shouldDrop()) {
+      call.close(Status.UNAVAILABLE.withDescription("Dropped by fault injection"),
+          new Metadata());
+      return new ServerCall.Listener<ReqT>() {
+      };
+    }
+    return next.startCall(call, headers);
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * @copyright defined in LICENSE.txt
+ */
+
+package hera.example.support;
+
+import java.util.Random;
+
+/**
+ * Faults injected by {@link FakeAergoNode}. Each can be changed while running.
+ */
+public class Faults {
+
+  protected final Random random;
+
+  protected volatile long latency = 0L;
+
+  protected volatile long latencyJitter = 0L;
+
+  protected volatile double dropRate = 0.0;
+
+  protected volatile double streamResetRate = 0.0;
+
+  Faults(final long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Delay each call.
+   *
+   * @param latency a base latency in milliseconds
+   * @param jitter a maximum difference from a base latency in milliseconds
+   * @return this
+   */
+  public Faults latency(final long latency, final long jitter) {
+    this.latency = latency;
+    this.latencyJitter = jitter;
+    return this;
+  }
+
+  /**
+   * Fail calls with UNAVAILABLE.
+   *
+   * @param dropRate a rate of calls to fail in [0, 1]
+   * @return this
+   */
+  public Faults dropRate(final double dropRate) {
+    this.dropRate = dropRate;
+    return this;
+  }
+
+  /**
+   * Reset block streams instead of sending a block.
+   *
+   * @param streamResetRate a rate of blocks to reset streams in [0, 1]
+   * @return this
+   */
+  public Faults streamResetRate(final double streamResetRate) {
+    this.streamResetRate = streamResetRate;
+    return this;
+  }
+
+  /**
+   * Clear all faults.
+   *
+   * @return this
+   */
+  public Faults clear() {
+    return latency(0L, 0L).dropRate(0.0).streamResetRate(0.0);
+  }
+
+  long nextDelay() {
+    if (0L == latency && 0L == latencyJitter) {
+      return 0L;
+    }
+    final long jitter;
+    synchronized (random) {
+      jitter = 0L == latencyJitter ? 0L
+          : (long) ((random.nextDouble() * 2.0 - 1.0) * latencyJitter);
+    }
+    return Math.max(0L, latency + jitter);
+  }
+
+  boolean shouldDrop() {
+    return happens(dropRate);
+  }
+
+  boolean shouldResetStreams() {
+    return happens(streamResetRate);
+  }
+
+  protected boolean happens(final double rate) {
+    if (rate <= 0.0) {
+      return false;
+    }
+    synchronized (random) {
+      return random.nextDouble() < rate;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Faults{latency=" + latency + "ms, jitter=" + latencyJitter + "ms, dropRate=" + dropRate
+        + ", streamResetRate=" + streamResetRate + "}";
+  }
+
+}